@@ -0,0 +1,32 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared pieces of the multi-mode benchmarks. The OS is a per-JVM singleton, so a benchmark
+ * that compares configurations runs each one in a child JVM: the parent re-launches the same
+ * main class with its arguments plus the mode as the last argument.
+ */
+public final class BenchmarkHarness {
+    private BenchmarkHarness() {}
+
+    /** Runs {@code main} once per mode in a child JVM, in order; fails if any child exits non-zero. */
+    public static void runModesInChildJvms(Class<?> main, List<String> args, String... modes) throws Exception {
+        for (String mode : modes) {
+            List<String> cmd = new ArrayList<>(List.of(
+                    System.getProperty("java.home") + "/bin/java", "-cp", System.getProperty("java.class.path"),
+                    main.getName()));
+            cmd.addAll(args);
+            cmd.add(mode);
+            java.lang.Process child = new ProcessBuilder(cmd).inheritIO().start();
+            if (child.waitFor() != 0) throw new IllegalStateException("scenario failed: " + mode);
+        }
+    }
+
+    /** Pure CPU load: yields at every chance and never blocks. */
+    static final class Hog extends UserlandProcess {
+        @Override
+        public void main() {
+            while (true) cooperate();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Process churn: a parent creates a short-lived child, waits for it and checks its exit code,
+ * over and over (default 1M times) in virtual time. Children take turns ending in each way the
+ * kernel has to clean up after:
+ *   exit      the child exits by itself, after trying to swallow the exit with catch (Throwable)
+ *   queued    killed while still in a run queue
+ *   sleeping  killed while asleep
+ *   blocked   killed while blocked on a mutex the parent holds (and has inherited realtime for)
+ * Every tenth of the run it prints heap in use after a GC, live processes and JVM threads;
+ * all three should stay flat if reaping really drops every reference.
+ * Usage: java ChurnBenchmark [children=1000000] [seed=1]
+ */
+public class ChurnBenchmark {
+    private static final CountDownLatch done = new CountDownLatch(1);
+    private static volatile int failures;
+    private static volatile int zombieSyscalls;
+
+    public static void main(String[] args) throws InterruptedException {
+        int children = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+        OS.UseVirtualTime(seed);
+        long t0 = System.nanoTime();
+        OS.Startup(new Parent(children));
+        done.await();
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d children in %.2f s: %.0f create+reap+wait/s, %d wrong exit codes, %d syscalls after exit%n",
+                children, seconds, children / seconds, failures, zombieSyscalls);
+        System.exit(failures == 0 && zombieSyscalls == 0 ? 0 : 1);
+    }
+
+    private static final class Parent extends UserlandProcess {
+        private final int children;
+        Parent(int children) { this.children = children; }
+
+        @Override
+        public void main() {
+            int mutex = OS.CreateMutex();
+            int every = Math.max(1, children / 10);
+            for (int i = 1; i <= children; i++) {
+                int expected;
+                int pid;
+                switch (i % 4) {
+                    case 0 -> {
+                        expected = i & 0x7F;
+                        pid = OS.CreateProcess(new Exiting(expected), OS.PriorityType.interactive);
+                    }
+                    case 1 -> {
+                        expected = Scheduler.KILLED_EXIT_CODE;
+                        pid = OS.CreateProcess(new Exiting(0), OS.PriorityType.interactive);
+                        OS.Kill(pid);
+                    }
+                    case 2 -> {
+                        expected = Scheduler.KILLED_EXIT_CODE;
+                        pid = OS.CreateProcess(new Sleeper(), OS.PriorityType.interactive);
+                        OS.Sleep(2); // outlasts one quantum, so the child gets dispatched and goes to sleep
+                        OS.Kill(pid);
+                    }
+                    default -> {
+                        expected = Scheduler.KILLED_EXIT_CODE;
+                        OS.Acquire(mutex);
+                        pid = OS.CreateProcess(new Locker(mutex), OS.PriorityType.realtime);
+                        OS.Sleep(2); // meanwhile the child blocks on the mutex and boosts us to realtime
+                        OS.Kill(pid); // drops the boost again
+                        OS.Release(mutex);
+                    }
+                }
+                if (OS.WaitForChild(pid) != expected) failures++;
+                if (i % every == 0) report(i);
+            }
+            done.countDown();
+            OS.Exit();
+        }
+
+        private static void report(int i) {
+            MemoryMXBean mem = ManagementFactory.getMemoryMXBean();
+            System.gc();
+            System.out.printf("%9d children: heap %6.1f MB, live processes %d, threads %d%n",
+                    i, mem.getHeapMemoryUsage().getUsed() / 1e6, OS.GetMetrics().liveProcessCount(),
+                    ManagementFactory.getThreadMXBean().getThreadCount());
+        }
+    }
+
+    private static final class Exiting extends UserlandProcess {
+        private final int code;
+        Exiting(int code) { this.code = code; }
+
+        @Override
+        public void main() {
+            cooperate();
+            try {
+                OS.Exit(code);
+            } catch (Throwable swallowed) {
+                OS.GetPid(); // must throw again: this process is gone
+                zombieSyscalls++;
+            }
+        }
+    }
+
+    private static final class Sleeper extends UserlandProcess {
+        @Override
+        public void main() {
+            OS.Sleep(1_000);
+            OS.Exit(1);
+        }
+    }
+
+    private static final class Locker extends UserlandProcess {
+        private final int mutex;
+        Locker(int mutex) { this.mutex = mutex; }
+
+        @Override
+        public void main() {
+            OS.Acquire(mutex);
+            OS.Exit(1);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.io.RandomAccessFile;
  */
 public class FakeFileSystem implements Device {
     private final RandomAccessFile[] files = new RandomAccessFile[10];
+    private final String[] names = new String[10]; // kept so a snapshot can reopen the file
 
     private int allocSlot() {
         for (int i = 0; i < files.length; i++) if (files[i] == null) return i;
@@ -24,6 +25,7 @@ public class FakeFileSystem implements Device {
             int idx = allocSlot();
             if (idx < 0) return -1;
             files[idx] = new RandomAccessFile(s.trim(), "rw");
+            names[idx] = s.trim();
             return idx;
         } catch (Exception e) {
             return -1;
@@ -35,6 +37,7 @@ public class FakeFileSystem implements Device {
         if (!valid(id)) return;
         try { files[id].close(); } catch (IOException ignored) {}
         files[id] = null;
+        names[id] = null;
     }
 
     @Override
@@ -63,6 +66,22 @@ public class FakeFileSystem implements Device {
         try { files[id].seek(Math.max(0L, to)); } catch (IOException ignored) {}
     }
 
+    // ----- snapshot support -----
+    int slotCount() { return files.length; }
+    String getName(int id) { return valid(id) ? names[id] : null; }
+
+    long getOffset(int id) {
+        if (!valid(id)) return -1;
+        try { return files[id].getFilePointer(); } catch (IOException e) { return 0; }
+    }
+
+    void restoreSlot(int id, String name, long offset) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(name, "rw");
+        f.seek(offset);
+        files[id] = f;
+        names[id] = name;
+    }
+
     @Override
     public int Write(int id, byte[] data) {
         if (!valid(id) || data == null || data.length == 0) return 0;
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Wake-up latency of a light interactive probe next to a noisy tenant of CPU hogs, in virtual time.
+ * Modes:
+ *   shared        everything in the root group, so the probe queues behind every hog
+ *   groups        tenant and probe in separate groups with equal shares
+ *   groups-rt     same, the tenant asks for realtime but its group is capped at interactive
+ *   uncapped-rt   same, but the tenant's group is granted realtime (what the cap prevents)
+ * In the grouped modes one hog also tries to create its own group and to spawn into root; both must be refused.
+ * Each mode runs in its own JVM (see BenchmarkHarness).
+ * Usage: java GroupIsolationBenchmark [probes=500] [hogs=20] [seed=1]
+ */
+public class GroupIsolationBenchmark {
+    private static final String[] MODES = { "shared", "groups", "groups-rt", "uncapped-rt" };
+    private static final int PROBE_SLEEP_MS = 5;
+    private static final CountDownLatch done = new CountDownLatch(1);
+    private static long[] latencies;
+    private static volatile boolean escaped;
+
+    public static void main(String[] args) throws Exception {
+        int probes = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        int hogs = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+        long seed = (args.length > 2) ? Long.parseLong(args[2]) : 1L;
+        if (args.length > 3) {
+            runScenario(probes, hogs, seed, args[3]);
+            return;
+        }
+        BenchmarkHarness.runModesInChildJvms(GroupIsolationBenchmark.class,
+                List.of(String.valueOf(probes), String.valueOf(hogs), String.valueOf(seed)), MODES);
+    }
+
+    private static void runScenario(int probes, int hogs, long seed, String mode) throws InterruptedException {
+        latencies = new long[probes];
+        OS.UseVirtualTime(seed);
+        OS.Startup(new Setup(probes, hogs, mode));
+        done.await();
+
+        long[] l = latencies.clone();
+        Arrays.sort(l);
+        double mean = Arrays.stream(l).average().orElse(0) / 1e6;
+        System.out.printf("%-12s probe wake-up latency: mean %6.2f ms, p99 %6.2f ms, max %6.2f ms%s%n",
+                mode, mean, l[(int) Math.ceil(0.99 * l.length) - 1] / 1e6, l[l.length - 1] / 1e6,
+                escaped ? "  (tenant ESCAPED its group)" : "");
+        System.exit(escaped ? 1 : 0);
+    }
+
+    private static final class Setup extends UserlandProcess {
+        private final int probes, hogs;
+        private final String mode;
+        Setup(int probes, int hogs, String mode) { this.probes = probes; this.hogs = hogs; this.mode = mode; }
+
+        @Override
+        public void main() {
+            int tenant = ProcessGroup.ROOT_ID, probeGroup = ProcessGroup.ROOT_ID;
+            OS.PriorityType hogPriority = OS.PriorityType.interactive;
+            if (!mode.equals("shared")) {
+                OS.PriorityType cap = mode.equals("uncapped-rt") ? OS.PriorityType.realtime : OS.PriorityType.interactive;
+                tenant = OS.CreateGroup("tenant", ProcessGroup.DEFAULT_SHARES, -1, -1, cap);
+                probeGroup = OS.CreateGroup("probe", ProcessGroup.DEFAULT_SHARES, -1, -1);
+                if (mode.endsWith("-rt")) hogPriority = OS.PriorityType.realtime;
+                OS.CreateProcess(new Escaper(), hogPriority, tenant);
+            }
+            for (int i = 0; i < hogs; i++) OS.CreateProcess(new BenchmarkHarness.Hog(), hogPriority, tenant);
+            OS.CreateProcess(new Probe(probes), OS.PriorityType.interactive, probeGroup);
+            OS.Exit();
+        }
+    }
+
+    // a hog that first tries to get out from under its group's caps
+    private static final class Escaper extends UserlandProcess {
+        @Override
+        public void main() {
+            if (OS.CreateGroup("escape", 1_000_000, -1, -1, OS.PriorityType.realtime) >= 0) escaped = true;
+            if (OS.CreateProcess(new BenchmarkHarness.Hog(), OS.PriorityType.realtime, ProcessGroup.ROOT_ID) >= 0) escaped = true;
+            while (true) cooperate();
+        }
+    }
+
+    private static final class Probe extends UserlandProcess {
+        private final int probes;
+        Probe(int probes) { this.probes = probes; }
+
+        @Override
+        public void main() {
+            for (int i = 0; i < probes; i++) {
+                long t0 = OS.GetTimeNanos();
+                OS.Sleep(PROBE_SLEEP_MS);
+                latencies[i] = OS.GetTimeNanos() - t0 - PROBE_SLEEP_MS * 1_000_000L;
+            }
+            done.countDown();
+            OS.Exit();
+        }
+    }
+}
@@ -1,25 +1,66 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+
 public class Kernel extends Process implements Device {
     private final Scheduler scheduler;
-    private final VFS vfs = new VFS();
+    private final Metrics metrics = new Metrics();
+    private final VFS vfs = new VFS(metrics);
+
+    // syscalls issued before any process is running (OS.Startup) wait here for their result
+    private final Semaphore hostDone = new Semaphore(0);
+    private Object hostResult;
+    private volatile boolean dispatched; // a process has held the CPU; host syscalls are over
 
     public Kernel() {
         super();
         this.scheduler = new Scheduler(this); // pass self so scheduler can close fds on exit
     }
 
+    public Kernel(Clock clock, Random rng) {
+        super();
+        this.scheduler = new Scheduler(this, clock, rng);
+    }
+
     public Scheduler getScheduler() { return scheduler; }
+    VFS getVfs() { return vfs; }
+    public Metrics getMetrics() { return metrics; }
+
+    boolean hasDispatched() { return dispatched; }
+
+    Object callFromHost() {
+        start();
+        hostDone.acquireUninterruptibly();
+        Object rv = hostResult; hostResult = null;
+        return rv;
+    }
 
     @Override
     public void main() {
         while (true) {
+            PCB caller = scheduler.currentlyRunning;
+            boolean fromHost = caller == null;
+            if (OS.currentCall != OS.CallType.NONE) metrics.syscall(OS.currentCall);
             switch (OS.currentCall) {
                 // ----- process APIs -----
                 case CreateProcess -> {
                     UserlandProcess up = (UserlandProcess) OS.parameters.get(0);
                     OS.PriorityType p  = (OS.PriorityType) OS.parameters.get(1);
-                    int pid = scheduler.CreateProcess(up, p);
+                    int pid = (OS.parameters.size() > 2)
+                            ? scheduler.CreateProcess(up, p, (Integer) OS.parameters.get(2))
+                            : scheduler.CreateProcess(up, p);
                     OS.retVal = pid;
                 }
+                case CreateGroup -> {
+                    String name     = (String) OS.parameters.get(0);
+                    int shares      = (Integer) OS.parameters.get(1);
+                    int maxFds      = (Integer) OS.parameters.get(2);
+                    long maxMemory  = (Long) OS.parameters.get(3);
+                    OS.PriorityType maxPriority = (OS.PriorityType) OS.parameters.get(4);
+                    OS.retVal = scheduler.CreateGroup(name, shares, maxFds, maxMemory, maxPriority);
+                }
                 case SwitchProcess -> {
                     scheduler.SwitchProcess();
                     OS.retVal = Boolean.TRUE;
@@ -33,9 +74,46 @@ public class Kernel extends Process implements Device {
                     OS.retVal = scheduler.GetPid();
                 }
                 case Exit -> {
-                    scheduler.ExitCurrent();
+                    int code = OS.parameters.isEmpty() ? 0 : (Integer) OS.parameters.get(0);
+                    scheduler.ExitCurrent(code);
                     OS.retVal = Boolean.TRUE;
                 }
+                case WaitForChild -> {
+                    int pid = (Integer) OS.parameters.get(0);
+                    OS.retVal = scheduler.WaitForChild(pid);
+                }
+                case Kill -> {
+                    int pid = (Integer) OS.parameters.get(0);
+                    OS.retVal = scheduler.Kill(pid);
+                }
+                case IgnoreChildExits -> {
+                    scheduler.IgnoreChildExits();
+                    OS.retVal = Boolean.TRUE;
+                }
+                case CreateMutex -> {
+                    OS.retVal = scheduler.CreateLock(true, 1);
+                }
+                case CreateSemaphore -> {
+                    int permits = (Integer) OS.parameters.get(0);
+                    OS.retVal = scheduler.CreateLock(false, permits);
+                }
+                case Acquire -> {
+                    int id = (Integer) OS.parameters.get(0);
+                    OS.retVal = scheduler.Acquire(id);
+                }
+                case Release -> {
+                    int id = (Integer) OS.parameters.get(0);
+                    OS.retVal = scheduler.Release(id);
+                }
+                case Checkpoint -> {
+                    String path = (String) OS.parameters.get(0);
+                    try {
+                        KernelSnapshot.write(this, Path.of(path));
+                        OS.retVal = Boolean.TRUE;
+                    } catch (IOException e) {
+                        OS.retVal = Boolean.FALSE;
+                    }
+                }
 
                 // ----- device APIs -----
                 case Open -> {
@@ -44,8 +122,9 @@ public class Kernel extends Process implements Device {
                     if (cur == null) { OS.retVal = -1; break; }
                     int userFd = cur.allocUserFd();
                     if (userFd < 0) { OS.retVal = -1; break; }
+                    if (!cur.group.tryOpenFd()) { OS.retVal = -1; break; }
                     int vfsId = vfs.Open(s);
-                    if (vfsId < 0) { OS.retVal = -1; break; }
+                    if (vfsId < 0) { cur.group.fdClosed(); OS.retVal = -1; break; }
                     cur.setUserFd(userFd, vfsId);
                     OS.retVal = userFd;
                 }
@@ -57,6 +136,7 @@ public class Kernel extends Process implements Device {
                         if (vfsId >= 0) {
                             vfs.Close(vfsId);
                             cur.clearUserFd(userFd);
+                            cur.group.fdClosed();
                         }
                     }
                     OS.retVal = Boolean.TRUE;
@@ -94,7 +174,27 @@ public class Kernel extends Process implements Device {
                     OS.retVal = wrote;
                 }
 
-                case NONE, SendMessage, GetMapping, AllocateMemory, FreeMemory,
+                // ----- memory APIs (accounting against the group's quota) -----
+                case AllocateMemory -> {
+                    int size = (Integer) OS.parameters.get(0);
+                    PCB cur = scheduler.currentlyRunning;
+                    int addr = -1;
+                    if (cur != null && size > 0 && cur.group.tryAllocate(size)) {
+                        addr = cur.allocate(size);
+                        if (addr < 0) cur.group.freed(size);
+                    }
+                    OS.retVal = addr;
+                }
+                case FreeMemory -> {
+                    int pointer = (Integer) OS.parameters.get(0);
+                    int size    = (Integer) OS.parameters.get(1);
+                    PCB cur = scheduler.currentlyRunning;
+                    boolean ok = cur != null && cur.free(pointer, size);
+                    if (ok) cur.group.freed(size);
+                    OS.retVal = ok;
+                }
+
+                case NONE, SendMessage, GetMapping,
                      GetPIDByName, WaitForMessage -> {
                     if (OS.retVal == null) OS.retVal = Boolean.TRUE;
                 }
@@ -102,12 +202,43 @@ public class Kernel extends Process implements Device {
 
             // mark handled
             OS.currentCall = OS.CallType.NONE;
+            if (fromHost) {
+                hostResult = OS.retVal; OS.retVal = null;
+                hostDone.release();
+            }
+
+            // dispatch next process if any, then park until the next syscall.
+            // A caller that was switched out keeps its result until it runs again (e.g. a blocking Acquire).
+            PCB next = scheduler.currentlyRunning;
+            if (next != caller) {
+                if (caller != null) caller.pendingRetVal = OS.retVal;
+                OS.retVal = (next != null) ? next.takePendingRetVal() : null;
+            }
+            if (next != null && next != caller) metrics.contextSwitch();
+            scheduler.publishGauges(metrics);
+            if (next != null) { dispatched = true; next.start(); }
+            park();
+        }
+    }
 
-            // dispatch next process if any, then yield kernel
+    // Waits for the next syscall. With nothing runnable on the wall clock, the kernel wakes itself
+    // at the earliest sleep deadline and dispatches whoever became runnable (virtual time jumps instead).
+    private void park() {
+        while (scheduler.currentlyRunning == null) {
+            long wait = scheduler.millisUntilNextWake();
+            if (wait < 0) break;              // no sleepers: only a host syscall can change anything
+            if (this.awaitTurn(wait)) return; // a host syscall came in first
+            scheduler.dispatchAfterIdle();
             PCB next = scheduler.currentlyRunning;
-            if (next != null) next.start();
-            this.stop();
+            if (next != null) {
+                OS.retVal = next.takePendingRetVal();
+                metrics.contextSwitch();
+                scheduler.publishGauges(metrics);
+                dispatched = true;
+                next.start();
+            }
         }
+        this.awaitTurn();
     }
 
     // ----- Device impl (not called directly from userland; used internally/for symmetry) -----
@@ -123,7 +254,10 @@ public class Kernel extends Process implements Device {
         for (int i = 0; i < table.length; i++) {
             int vfsId = table[i];
             if (vfsId >= 0) {
-                try { vfs.Close(vfsId); } finally { pcb.clearUserFd(i); }
+                try { vfs.Close(vfsId); } finally {
+                    pcb.clearUserFd(i);
+                    if (pcb.group != null) pcb.group.fdClosed();
+                }
             }
         }
     }
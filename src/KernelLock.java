@@ -0,0 +1,39 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Kernel-side mutex / counting semaphore, owned by the Scheduler.
+ * A mutex is a 1-permit semaphore that also tracks its owner, which is what priority
+ * inheritance needs; plain semaphores have no owner and never boost anyone.
+ */
+public class KernelLock {
+    final int id;
+    final boolean mutex;
+    int permits;
+    PCB owner;                                  // mutex only
+    final Deque<PCB> waiters = new ArrayDeque<>();
+
+    KernelLock(int id, boolean mutex, int permits) {
+        this.id = id;
+        this.mutex = mutex;
+        this.permits = permits;
+    }
+
+    // most urgent waiter first, FIFO among equals
+    PCB pollWaiter() {
+        PCB best = null;
+        for (PCB w : waiters) {
+            if (best == null || w.getPriority().ordinal() < best.getPriority().ordinal()) best = w;
+        }
+        if (best != null) waiters.remove(best);
+        return best;
+    }
+
+    OS.PriorityType topWaiterPriority() {
+        OS.PriorityType top = null;
+        for (PCB w : waiters) {
+            if (top == null || w.getPriority().ordinal() < top.ordinal()) top = w.getPriority();
+        }
+        return top;
+    }
+}
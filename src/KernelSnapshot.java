@@ -0,0 +1,378 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Constructor;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Checkpoint/restore of kernel state to a compact binary file, written and read through a
+ * memory-mapped buffer (size is computed up front, so the file is mapped once).
+ *
+ * Captured: clock, scheduler rng, next pid, every PCB (pid, class, priority, timeout counter,
+ * fd table, group, memory allocations, parent, unreaped child exit codes), run-queue order, sleep deadlines, kernel locks (owner,
+ * permits, wait queues, inherited priorities), process groups with their usage, VFS slots, RandomDevice rng states and FakeFileSystem file names + offsets.
+ * Not captured: userland stacks. A restored process is re-instantiated from its class name
+ * and starts in resume() (by default main() from the top, so pre-checkpoint work such as
+ * spawning children is repeated), with its kernel-side state (pid, fds, deadlines) intact.
+ * Queued processes are re-queued exactly as saved: group vruntimes are not caught up on restore.
+ *
+ * Layout (big-endian):
+ *   header   magic, version, clockKind(byte), nowMillis(long), nextPid, rng blob
+ *   classes  count, then (len short, utf-8) per distinct process class
+ *   locks    count, nextLockId, then per lock: id, mutex(byte), permits, ownerPid (-1 = none)
+ *   groups   count, nextGroupId, vruntimeFloor(double), then per group: id, name(len short, utf-8),
+ *            shares, maxFds, maxMemory(long), maxPriority(byte), cpuNanos(long), vruntime(double), openFds,
+ *            memoryBytes(long), processes
+ *   pcbs     count, then per PCB: pid, classIdx, groupId, priority(byte), basePriority(byte, -1 = not boosted),
+ *            timeouts, flags(byte), fds(10 bytes), nextAddress, allocCount, (pointer, size) per
+ *            allocation, parentPid, exitedCount, (pid, code) per unreaped child, then wakeAtMillis(long)
+ *            if sleeping, lockId if blocked or child pid if waiting; running PCB first, then rt/int/bg
+ *            queues in order, then sleepers, then each lock's waiters in queue order, then WaitForChild waiters
+ *   vfs      count, then (deviceCode byte, innerId byte) per slot
+ *   random   count, then (len, blob) per slot, len 0 = free
+ *   files    count, then (present byte, [len short, utf-8 name, offset long]) per slot
+ */
+public final class KernelSnapshot {
+    private static final int MAGIC = 0x4F53534E; // "OSSN"
+    private static final int VERSION = 5;
+    private static final int FD_SLOTS = 10;
+    private static final int FLAG_SLEEPING = 1;
+    private static final int FLAG_EXITING = 2;
+    private static final int FLAG_BLOCKED = 4;
+    private static final int FLAG_WAITING = 8;
+    private static final int FLAG_IGNORES_CHILD_EXITS = 16;
+
+    private KernelSnapshot() {}
+
+    /** Must be called on the kernel thread (e.g. from the Checkpoint syscall) or while the kernel is parked. */
+    public static void write(Kernel kernel, Path path) throws IOException {
+        Scheduler s = kernel.getScheduler();
+        VFS vfs = kernel.getVfs();
+
+        // ----- gather, and size everything before mapping -----
+        List<PCB> pcbs = new ArrayList<>();
+        List<Long> wakeAts = new ArrayList<>();
+        if (s.currentlyRunning != null) pcbs.add(s.currentlyRunning);
+        for (OS.PriorityType p : OS.PriorityType.values()) {
+            for (PCB pcb : s.runQueue(p)) pcbs.add(pcb);
+        }
+        int queued = pcbs.size();
+        for (Scheduler.SleepEntry e : s.sleepers()) { // heap-array order, re-adding it rebuilds the same heap
+            if (e.pcb == null) continue;            // cancelled by an exit
+            pcbs.add(e.pcb);
+            wakeAts.add(e.wakeAtMillis);
+        }
+        int sleepingEnd = pcbs.size();
+        List<KernelLock> locks = new ArrayList<>(s.locks().values());
+        for (KernelLock l : locks) pcbs.addAll(l.waiters);
+        int blockedEnd = pcbs.size();
+        for (PCB pcb : s.processes().values()) if (pcb.waitingFor != 0) pcbs.add(pcb);
+
+        Map<String, Integer> classIdx = new LinkedHashMap<>();
+        int[] pcbClass = new int[pcbs.size()];
+        for (int i = 0; i < pcbs.size(); i++) {
+            pcbClass[i] = classIdx.computeIfAbsent(pcbs.get(i).getProcessClassName(), k -> classIdx.size());
+        }
+        List<ProcessGroup> groups = new ArrayList<>(s.groups().values());
+        List<byte[]> groupNames = new ArrayList<>();
+        for (ProcessGroup g : groups) groupNames.add(g.name.getBytes(StandardCharsets.UTF_8));
+        long allocEntries = 0;
+        long exitedEntries = 0;
+        for (PCB pcb : pcbs) {
+            allocEntries += pcb.getAllocations().size();
+            exitedEntries += pcb.getExitedChildren().size();
+        }
+
+        List<byte[]> classNames = new ArrayList<>();
+        for (String name : classIdx.keySet()) classNames.add(name.getBytes(StandardCharsets.UTF_8));
+
+        byte[] rngBlob = serialize(s.getRng());
+        RandomDevice rd = vfs.getRandomDevice();
+        byte[][] rdBlobs = new byte[rd.slotCount()][];
+        for (int i = 0; i < rdBlobs.length; i++) {
+            Random r = rd.getSlot(i);
+            rdBlobs[i] = (r == null) ? new byte[0] : serialize(r);
+        }
+        FakeFileSystem ffs = vfs.getFileSystem();
+        byte[][] fileNames = new byte[ffs.slotCount()][];
+        for (int i = 0; i < fileNames.length; i++) {
+            String n = ffs.getName(i);
+            fileNames[i] = (n == null) ? null : n.getBytes(StandardCharsets.UTF_8);
+        }
+
+        long size = 4 + 4 + 1 + 8 + 4 + 4 + rngBlob.length;
+        size += 4;
+        for (byte[] n : classNames) size += 2 + n.length;
+        size += 4 + 4 + locks.size() * (4 + 1 + 4 + 4L);
+        size += 4 + 4 + 8;
+        for (byte[] n : groupNames) size += 4 + 2 + n.length + 4 + 4 + 8 + 1 + 8 + 8 + 4 + 8 + 4;
+        size += 4 + (long) pcbs.size() * (4 + 4 + 4 + 1 + 1 + 4 + 1 + FD_SLOTS + 4 + 4 + 4 + 4) + allocEntries * 8
+                + exitedEntries * 8
+                + (long) wakeAts.size() * 8
+                + (long) (pcbs.size() - sleepingEnd) * 4;
+        size += 4 + vfs.slotCount() * 2L;
+        size += 4;
+        for (byte[] b : rdBlobs) size += 4 + b.length;
+        size += 4;
+        for (byte[] n : fileNames) size += 1 + ((n == null) ? 0 : 2 + n.length + 8);
+
+        // ----- write -----
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            Clock clock = s.getClock();
+            buf.putInt(MAGIC).putInt(VERSION);
+            buf.put((byte) ((clock instanceof VirtualClock) ? 1 : 0)).putLong(clock.millis());
+            buf.putInt(PCB.peekNextPid());
+            buf.putInt(rngBlob.length).put(rngBlob);
+
+            buf.putInt(classNames.size());
+            for (byte[] n : classNames) buf.putShort((short) n.length).put(n);
+
+            buf.putInt(locks.size()).putInt(s.peekNextLockId());
+            for (KernelLock l : locks) {
+                buf.putInt(l.id).put((byte) (l.mutex ? 1 : 0)).putInt(l.permits);
+                buf.putInt((l.owner == null) ? -1 : l.owner.pid);
+            }
+
+            buf.putInt(groups.size()).putInt(s.peekNextGroupId()).putDouble(s.getVruntimeFloor());
+            for (int i = 0; i < groups.size(); i++) {
+                ProcessGroup g = groups.get(i);
+                buf.putInt(g.id).putShort((short) groupNames.get(i).length).put(groupNames.get(i));
+                buf.putInt(g.cpuShares).putInt(g.maxFds).putLong(g.maxMemory).put((byte) g.maxPriority.ordinal());
+                buf.putLong(g.cpuNanos).putDouble(g.vruntime).putInt(g.openFds).putLong(g.memoryBytes).putInt(g.processes);
+            }
+
+            buf.putInt(pcbs.size());
+            for (int i = 0; i < pcbs.size(); i++) {
+                PCB pcb = pcbs.get(i);
+                boolean sleeping = i >= queued && i < sleepingEnd;
+                boolean blocked = i >= sleepingEnd && i < blockedEnd;
+                boolean waiting = i >= blockedEnd;
+                buf.putInt(pcb.pid).putInt(pcbClass[i]).putInt(pcb.group.id);
+                buf.put((byte) pcb.getPriority().ordinal());
+                buf.put((byte) (pcb.isBoosted() ? pcb.getBasePriority().ordinal() : -1));
+                buf.putInt(pcb.getTimeoutCounter());
+                buf.put((byte) ((sleeping ? FLAG_SLEEPING : 0) | (pcb.exiting ? FLAG_EXITING : 0)
+                        | (blocked ? FLAG_BLOCKED : 0) | (waiting ? FLAG_WAITING : 0)
+                        | (pcb.ignoreChildExits ? FLAG_IGNORES_CHILD_EXITS : 0)));
+                int[] fds = pcb.getFdTable();
+                for (int f = 0; f < FD_SLOTS; f++) buf.put((byte) fds[f]);
+                Map<Integer, Integer> allocs = pcb.getAllocations();
+                buf.putInt(pcb.getNextAddress()).putInt(allocs.size());
+                for (Map.Entry<Integer, Integer> a : allocs.entrySet()) buf.putInt(a.getKey()).putInt(a.getValue());
+                Map<Integer, Integer> exited = pcb.getExitedChildren();
+                buf.putInt(pcb.parentPid).putInt(exited.size());
+                for (Map.Entry<Integer, Integer> c : exited.entrySet()) buf.putInt(c.getKey()).putInt(c.getValue());
+                if (sleeping) buf.putLong(wakeAts.get(i - queued));
+                if (blocked) buf.putInt(pcb.blockedOn.id);
+                if (waiting) buf.putInt(pcb.waitingFor);
+            }
+
+            buf.putInt(vfs.slotCount());
+            for (int i = 0; i < vfs.slotCount(); i++) {
+                int code = vfs.deviceCode(i);
+                buf.put((byte) code).put((byte) ((code == 0) ? -1 : vfs.innerId(i)));
+            }
+
+            buf.putInt(rdBlobs.length);
+            for (byte[] b : rdBlobs) buf.putInt(b.length).put(b);
+
+            buf.putInt(fileNames.length);
+            for (int i = 0; i < fileNames.length; i++) {
+                byte[] n = fileNames[i];
+                if (n == null) { buf.put((byte) 0); continue; }
+                buf.put((byte) 1).putShort((short) n.length).put(n).putLong(ffs.getOffset(i));
+            }
+            buf.force();
+        }
+    }
+
+    /**
+     * Loads a snapshot into a freshly constructed kernel (nothing created or dispatched yet).
+     * {@code factory} maps a process class name to a new instance; null means "use the public
+     * no-arg constructor", which anonymous/inner process classes don't have.
+     * Sleep deadlines are rebased onto the target clock, so a wall-clock restore keeps the
+     * remaining sleep time rather than the absolute deadline.
+     */
+    public static void read(Kernel kernel, Path path, Function<String, UserlandProcess> factory) throws IOException {
+        Scheduler s = kernel.getScheduler();
+        VFS vfs = kernel.getVfs();
+        if (s.currentlyRunning != null || !s.sleepers().isEmpty() || !s.locks().isEmpty()) {
+            throw new IllegalStateException("kernel is not fresh");
+        }
+        for (OS.PriorityType p : OS.PriorityType.values()) {
+            if (!s.runQueue(p).isEmpty()) throw new IllegalStateException("kernel is not fresh");
+        }
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC) throw new IOException("not a kernel snapshot: " + path);
+            int version = buf.getInt();
+            if (version != VERSION) throw new IOException("unsupported snapshot version " + version);
+
+            boolean savedVirtual = buf.get() == 1;
+            long savedNow = buf.getLong();
+            Clock clock = s.getClock();
+            if (savedVirtual && clock instanceof VirtualClock vc) vc.advanceTo(savedNow);
+            long shift = clock.millis() - savedNow;
+            int nextPid = buf.getInt();
+            s.setRng((Random) deserialize(bytes(buf, buf.getInt())));
+
+            int classCount = buf.getInt();
+            List<Function<String, UserlandProcess>> makers = new ArrayList<>(classCount);
+            String[] names = new String[classCount];
+            for (int i = 0; i < classCount; i++) {
+                names[i] = new String(bytes(buf, buf.getShort()), StandardCharsets.UTF_8);
+                makers.add((factory != null) ? factory : reflectiveMaker(names[i]));
+            }
+
+            int lockCount = buf.getInt();
+            int nextLockId = buf.getInt();
+            Map<Integer, KernelLock> locksById = new HashMap<>();
+            Map<Integer, List<KernelLock>> ownedBy = new HashMap<>(); // owner pid -> mutexes, resolved as PCBs appear
+            for (int i = 0; i < lockCount; i++) {
+                KernelLock l = new KernelLock(buf.getInt(), buf.get() == 1, buf.getInt());
+                int ownerPid = buf.getInt();
+                if (ownerPid >= 0) ownedBy.computeIfAbsent(ownerPid, k -> new ArrayList<>()).add(l);
+                locksById.put(l.id, l);
+                s.restoreLock(l, nextLockId);
+            }
+
+            int groupCount = buf.getInt();
+            int nextGroupId = buf.getInt();
+            s.setVruntimeFloor(buf.getDouble());
+            for (int i = 0; i < groupCount; i++) {
+                int id = buf.getInt();
+                String name = new String(bytes(buf, buf.getShort()), StandardCharsets.UTF_8);
+                ProcessGroup g = new ProcessGroup(id, name, buf.getInt(), buf.getInt(), buf.getLong(),
+                        OS.PriorityType.values()[buf.get()]);
+                g.cpuNanos = buf.getLong();
+                g.vruntime = buf.getDouble();
+                g.openFds = buf.getInt();
+                g.memoryBytes = buf.getLong();
+                g.processes = buf.getInt();
+                s.restoreGroup(g, nextGroupId);
+            }
+
+            OS.PriorityType[] prios = OS.PriorityType.values();
+            int pcbCount = buf.getInt();
+            for (int i = 0; i < pcbCount; i++) {
+                int pid = buf.getInt();
+                int cls = buf.getInt();
+                ProcessGroup group = s.getGroup(buf.getInt());
+                OS.PriorityType prio = prios[buf.get()];
+                int base = buf.get();
+                int timeouts = buf.getInt();
+                int flags = buf.get();
+                UserlandProcess up = makers.get(cls).apply(names[cls]);
+                up.markRestored();
+                PCB pcb = new PCB(up, prio, pid);
+                pcb.group = group;
+                if (base >= 0) pcb.restoreBasePriority(prios[base]);
+                pcb.setTimeoutCounter(timeouts);
+                pcb.exiting = (flags & FLAG_EXITING) != 0;
+                pcb.ignoreChildExits = (flags & FLAG_IGNORES_CHILD_EXITS) != 0;
+                for (int f = 0; f < FD_SLOTS; f++) pcb.setUserFd(f, buf.get());
+                int nextAddress = buf.getInt();
+                int allocCount = buf.getInt();
+                Map<Integer, Integer> allocs = new HashMap<>();
+                for (int a = 0; a < allocCount; a++) allocs.put(buf.getInt(), buf.getInt());
+                pcb.restoreMemory(allocs, nextAddress);
+                pcb.parentPid = buf.getInt();
+                int exitedCount = buf.getInt();
+                Map<Integer, Integer> exited = new HashMap<>();
+                for (int c = 0; c < exitedCount; c++) exited.put(buf.getInt(), buf.getInt());
+                pcb.restoreExitedChildren(exited);
+                List<KernelLock> owned = ownedBy.isEmpty() ? null : ownedBy.get(pid);
+                if (owned != null) {
+                    for (KernelLock l : owned) l.owner = pcb;
+                    pcb.heldMutexes.addAll(owned);
+                }
+                if ((flags & FLAG_SLEEPING) != 0) {
+                    s.restoreSleeper(pcb, buf.getLong() + shift);
+                } else if ((flags & FLAG_BLOCKED) != 0) {
+                    KernelLock l = locksById.get(buf.getInt());
+                    l.waiters.addLast(pcb);
+                    pcb.blockedOn = l;
+                    s.restoreBlocked(pcb);
+                } else if ((flags & FLAG_WAITING) != 0) {
+                    pcb.waitingFor = buf.getInt();
+                    s.restoreBlocked(pcb);
+                } else {
+                    s.restoreQueued(pcb); // the checkpointed running process comes first, so it heads its queue
+                }
+            }
+            PCB.advanceNextPid(nextPid);
+
+            int vfsSlots = buf.getInt();
+            for (int i = 0; i < vfsSlots; i++) vfs.restoreSlot(i, buf.get(), buf.get());
+
+            RandomDevice rd = vfs.getRandomDevice();
+            int rdSlots = buf.getInt();
+            for (int i = 0; i < rdSlots; i++) {
+                int len = buf.getInt();
+                rd.restoreSlot(i, (len == 0) ? null : (Random) deserialize(bytes(buf, len)));
+            }
+
+            FakeFileSystem ffs = vfs.getFileSystem();
+            int fileSlots = buf.getInt();
+            for (int i = 0; i < fileSlots; i++) {
+                if (buf.get() == 0) continue;
+                String name = new String(bytes(buf, buf.getShort()), StandardCharsets.UTF_8);
+                ffs.restoreSlot(i, name, buf.getLong());
+            }
+        }
+    }
+
+    private static Function<String, UserlandProcess> reflectiveMaker(String className) {
+        Constructor<? extends UserlandProcess> ctor;
+        try {
+            ctor = Class.forName(className).asSubclass(UserlandProcess.class).getDeclaredConstructor();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot recreate " + className + "; pass a factory", e);
+        }
+        return name -> {
+            try {
+                return ctor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("cannot recreate " + name, e);
+            }
+        };
+    }
+
+    private static byte[] bytes(MappedByteBuffer buf, int len) {
+        byte[] b = new byte[len];
+        buf.get(b);
+        return b;
+    }
+
+    // java.util.Random only exposes its state through serialization
+    private static byte[] serialize(Random r) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos)) { oos.writeObject(r); }
+        return bos.toByteArray();
+    }
+
+    private static Object deserialize(byte[] b) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b))) {
+            return ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
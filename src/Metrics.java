@@ -0,0 +1,94 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live kernel metrics. Writers are the kernel thread only (Kernel, Scheduler, VFS); readers
+ * are scrapers on other threads. Everything is a LongAdder or a volatile field, so a scrape
+ * never takes a lock the kernel could be waiting on and never touches scheduler structures.
+ * Counters are monotonic; rates (syscalls/s, switches/s) are left to the scraper, e.g. rate() in Prometheus.
+ */
+public class Metrics {
+    private final LongAdder[] syscalls = new LongAdder[OS.CallType.values().length];
+    private final LongAdder contextSwitches = new LongAdder();
+    private final LongAdder openRandom = new LongAdder();   // the VFS has exactly two devices
+    private final LongAdder openFiles = new LongAdder();
+    private final Map<Integer, ProcessGroup> groups = new ConcurrentHashMap<>();
+    private volatile int rtQueue, intQueue, bgQueue, sleepers, processes;
+
+    public Metrics() {
+        for (int i = 0; i < syscalls.length; i++) syscalls[i] = new LongAdder();
+    }
+
+    // ----- kernel-side updates -----
+    void syscall(OS.CallType call) { syscalls[call.ordinal()].increment(); }
+    void contextSwitch() { contextSwitches.increment(); }
+    void deviceOpened(boolean random) { (random ? openRandom : openFiles).increment(); }
+    void deviceClosed(boolean random) { (random ? openRandom : openFiles).decrement(); }
+
+    void registerGroup(ProcessGroup g) { groups.put(g.id, g); }
+
+    void queues(int rt, int interactive, int bg, int sleeping, int live) {
+        rtQueue = rt;
+        intQueue = interactive;
+        bgQueue = bg;
+        sleepers = sleeping;
+        processes = live;
+    }
+
+    // ----- scrape side -----
+    public long syscallCount(OS.CallType call) { return syscalls[call.ordinal()].sum(); }
+    public long contextSwitchCount() { return contextSwitches.sum(); }
+    public int liveProcessCount() { return processes; }
+
+    /** Prometheus text exposition format, version 0.0.4. */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(2048);
+        header(sb, "os_run_queue_length", "gauge", "Runnable processes waiting in each priority queue.");
+        sb.append("os_run_queue_length{priority=\"realtime\"} ").append(rtQueue).append('\n');
+        sb.append("os_run_queue_length{priority=\"interactive\"} ").append(intQueue).append('\n');
+        sb.append("os_run_queue_length{priority=\"background\"} ").append(bgQueue).append('\n');
+
+        header(sb, "os_processes", "gauge", "Live (created and not yet exited) processes.");
+        sb.append("os_processes ").append(processes).append('\n');
+
+        header(sb, "os_sleeping_processes", "gauge", "Processes waiting for a Sleep deadline.");
+        sb.append("os_sleeping_processes ").append(sleepers).append('\n');
+
+        header(sb, "os_open_descriptors", "gauge", "Open VFS descriptors per device.");
+        sb.append("os_open_descriptors{device=\"random\"} ").append(openRandom.sum()).append('\n');
+        sb.append("os_open_descriptors{device=\"file\"} ").append(openFiles.sum()).append('\n');
+
+        header(sb, "os_syscalls_total", "counter", "Syscalls handled by the kernel, by call type.");
+        for (OS.CallType c : OS.CallType.values()) {
+            if (c == OS.CallType.NONE) continue;
+            sb.append("os_syscalls_total{call=\"").append(c.name()).append("\"} ").append(syscalls[c.ordinal()].sum()).append('\n');
+        }
+
+        header(sb, "os_group_cpu_seconds_total", "counter", "CPU time charged to each process group.");
+        groups.values().forEach(g -> groupLine(sb, "os_group_cpu_seconds_total", g, g.getCpuNanos() / 1e9));
+        header(sb, "os_group_processes", "gauge", "Live processes per process group.");
+        groups.values().forEach(g -> groupLine(sb, "os_group_processes", g, g.getProcessCount()));
+        header(sb, "os_group_open_descriptors", "gauge", "Open descriptors per process group.");
+        groups.values().forEach(g -> groupLine(sb, "os_group_open_descriptors", g, g.getOpenFds()));
+        header(sb, "os_group_memory_bytes", "gauge", "Allocated memory per process group.");
+        groups.values().forEach(g -> groupLine(sb, "os_group_memory_bytes", g, g.getMemoryBytes()));
+
+        header(sb, "os_context_switches_total", "counter", "Dispatches of a different process than the caller.");
+        sb.append("os_context_switches_total ").append(contextSwitches.sum()).append('\n');
+        return sb.toString();
+    }
+
+    private static void groupLine(StringBuilder sb, String metric, ProcessGroup g, double value) {
+        String label = g.getName().replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        // names need not be unique, the id keeps the series apart
+        sb.append(metric).append("{group_id=\"").append(g.id).append("\",group=\"").append(label).append("\"} ");
+        if (value == Math.rint(value)) sb.append((long) value); else sb.append(value);
+        sb.append('\n');
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
@@ -1,5 +1,11 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
 
 public class OS {
     private static Kernel ki;
@@ -8,106 +14,332 @@ public class OS {
     public static Object retVal;
     public static CallType currentCall = CallType.NONE;
 
+    // set by UseVirtualTime() before the kernel exists
+    private static VirtualClock virtualClock;
+    private static long virtualSeed;
+    private static boolean priorityInheritance = true;
+    private static MetricsServer metricsServer; // set by StartMetricsServer()
+
     // ----- Process/syscall helpers -----
     private static void ensureKernel() {
-        if (ki == null) ki = new Kernel();
+        if (ki != null) return;
+        ki = (virtualClock != null) ? new Kernel(virtualClock, new Random(virtualSeed)) : new Kernel();
+        ki.getScheduler().setPriorityInheritance(priorityInheritance);
+    }
+
+    // First thing in every syscall, before parameters/currentCall are touched. A thread that
+    // runs no process (Main's, a benchmark driver) is the host: it may only make bootstrap
+    // calls, since after the first dispatch it would race the process that holds the CPU.
+    private static void enterSyscall() {
+        Process.exitIfReaped();
+        if (Process.current() == null && ki != null && ki.hasDispatched()) {
+            throw new IllegalStateException("syscalls from outside a process are only allowed before the first dispatch");
+        }
     }
 
-    private static void startTheKernel() {
+    // Strict handoff: the caller parks until the kernel dispatches it again, so exactly
+    // one thread (kernel or a single userland process) runs at any time.
+    private static Object startTheKernel() {
         ensureKernel();
+        if (Process.current() == null) return ki.callFromHost(); // bootstrap calls from Main's thread
+        PCB caller = ki.getScheduler().currentlyRunning;
+        caller.stop();
         ki.start();
+        caller.awaitTurn();
+        Process.exitIfReaped(); // killed while parked: leave retVal to whoever runs now
+        Object rv = retVal; retVal = null;
+        return rv;
     }
 
     // ----- Process syscalls -----
     public static int CreateProcess(UserlandProcess up, PriorityType p) {
+        enterSyscall();
         parameters.clear();
         parameters.add(up);
         parameters.add(p);
         currentCall = CallType.CreateProcess;
-        startTheKernel();
-        Object rv = retVal; retVal = null;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    // place the new process in a specific process group instead of the caller's
+    public static int CreateProcess(UserlandProcess up, PriorityType p, int groupId) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(up);
+        parameters.add(p);
+        parameters.add(groupId);
+        currentCall = CallType.CreateProcess;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    /** New process group; maxFds / maxMemoryBytes of -1 mean unlimited. Returns the group id or -1. */
+    public static int CreateGroup(String name, int cpuShares, int maxFds, long maxMemoryBytes) {
+        return CreateGroup(name, cpuShares, maxFds, maxMemoryBytes, PriorityType.interactive);
+    }
+
+    /** Realtime is only available to a group that is granted it here. Only the host and root-group processes may create groups. */
+    public static int CreateGroup(String name, int cpuShares, int maxFds, long maxMemoryBytes, PriorityType maxPriority) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(name);
+        parameters.add(cpuShares);
+        parameters.add(maxFds);
+        parameters.add(maxMemoryBytes);
+        parameters.add(maxPriority);
+        currentCall = CallType.CreateGroup;
+        Object rv = startTheKernel();
         return (rv instanceof Integer) ? (Integer) rv : -1;
     }
 
     public static void Sleep(int milliseconds) {
+        enterSyscall();
         parameters.clear();
         parameters.add(milliseconds);
         currentCall = CallType.Sleep;
         startTheKernel();
-        retVal = null;
     }
 
     public static int GetPid() {
+        enterSyscall();
         parameters.clear();
         currentCall = CallType.GetPID;
-        startTheKernel();
-        Object rv = retVal; retVal = null;
+        Object rv = startTheKernel();
         return (rv instanceof Integer) ? (Integer) rv : -1;
     }
 
-    public static void Exit() {
+    public static void Exit() { Exit(0); }
+
+    // Does not return when called from a process: the caller stays parked until the kernel has
+    // reaped it, then its thread unwinds via ExitSignal.
+    public static void Exit(int exitCode) {
+        enterSyscall();
         parameters.clear();
+        parameters.add(exitCode);
         currentCall = CallType.Exit;
+        ensureKernel();
+        if (Process.current() == null) { ki.callFromHost(); return; }
+        PCB caller = ki.getScheduler().currentlyRunning;
+        caller.stop();
+        ki.start();
+        caller.awaitTurn();
+        throw new Process.ExitSignal();
+    }
+
+    /** Blocks until child {@code pid} exits and returns its exit code; -1 if pid is not a child of the caller. */
+    public static int WaitForChild(int pid) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(pid);
+        currentCall = CallType.WaitForChild;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    /** Terminates child {@code pid}; its WaitForChild sees exit code 137. False if pid is not a live child of the caller. */
+    public static boolean Kill(int pid) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(pid);
+        currentCall = CallType.Kill;
+        Object rv = startTheKernel();
+        return Boolean.TRUE.equals(rv);
+    }
+
+    /**
+     * Like ignoring SIGCHLD: from now on the exit codes of the caller's children are dropped
+     * instead of kept until WaitForChild collects them. Waiting on a child that is still alive
+     * keeps working. For parents that spawn without ever waiting.
+     */
+    public static void IgnoreChildExits() {
+        enterSyscall();
+        parameters.clear();
+        currentCall = CallType.IgnoreChildExits;
         startTheKernel();
-        retVal = null;
     }
 
     public static void SwitchProcess() {
+        enterSyscall();
         parameters.clear();
         currentCall = CallType.SwitchProcess;
         startTheKernel();
-        retVal = null;
     }
 
     public static void switchProcess() { SwitchProcess(); }
 
+    // ----- Locks (kernel mutexes / semaphores) -----
+    public static int CreateMutex() {
+        enterSyscall();
+        parameters.clear();
+        currentCall = CallType.CreateMutex;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    public static int CreateSemaphore(int permits) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(permits);
+        currentCall = CallType.CreateSemaphore;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    // blocks until the permit is granted; false for a bad id (or an already-owned mutex)
+    public static boolean Acquire(int id) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(id);
+        currentCall = CallType.Acquire;
+        Object rv = startTheKernel();
+        return Boolean.TRUE.equals(rv);
+    }
+
+    public static boolean Release(int id) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(id);
+        currentCall = CallType.Release;
+        Object rv = startTheKernel();
+        return Boolean.TRUE.equals(rv);
+    }
+
+    // ----- Memory (accounted against the process group's quota) -----
+    public static int AllocateMemory(int size) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(size);
+        currentCall = CallType.AllocateMemory;
+        Object rv = startTheKernel();
+        return (rv instanceof Integer) ? (Integer) rv : -1;
+    }
+
+    public static boolean FreeMemory(int pointer, int size) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(pointer);
+        parameters.add(size);
+        currentCall = CallType.FreeMemory;
+        Object rv = startTheKernel();
+        return Boolean.TRUE.equals(rv);
+    }
+
     // ----- Devices (userland entry points) -----
     public static int Open(String s) {
+        enterSyscall();
         parameters.clear();
         parameters.add(s);
         currentCall = CallType.Open;
-        startTheKernel();
-        Object rv = retVal; retVal = null;
+        Object rv = startTheKernel();
         return (rv instanceof Integer) ? (Integer) rv : -1;
     }
 
     public static void Close(int id) {
+        enterSyscall();
         parameters.clear();
         parameters.add(id);
         currentCall = CallType.Close;
         startTheKernel();
-        retVal = null;
     }
 
     public static byte[] Read(int id, int size) {
+        enterSyscall();
         parameters.clear();
         parameters.add(id);
         parameters.add(size);
         currentCall = CallType.Read;
-        startTheKernel();
-        Object rv = retVal; retVal = null;
+        Object rv = startTheKernel();
         return (rv instanceof byte[]) ? (byte[]) rv : new byte[0];
     }
 
     public static void Seek(int id, int to) {
+        enterSyscall();
         parameters.clear();
         parameters.add(id);
         parameters.add(to);
         currentCall = CallType.Seek;
         startTheKernel();
-        retVal = null;
     }
 
     public static int Write(int id, byte[] data) {
+        enterSyscall();
         parameters.clear();
         parameters.add(id);
         parameters.add(data);
         currentCall = CallType.Write;
-        startTheKernel();
-        Object rv = retVal; retVal = null;
+        Object rv = startTheKernel();
         return (rv instanceof Integer) ? (Integer) rv : 0;
     }
 
+    // ----- Time -----
+    /**
+     * Switch to deterministic simulation: scheduler-driven virtual clock and seeded lottery.
+     * Must be called before the first syscall / Startup.
+     */
+    public static void UseVirtualTime(long seed) {
+        if (ki != null) throw new IllegalStateException("kernel already started");
+        virtualClock = new VirtualClock();
+        virtualSeed = seed;
+    }
+
+    /** On by default; turning it off is only useful to measure priority inversion. Call before Startup. */
+    public static void UsePriorityInheritance(boolean on) {
+        if (ki != null) throw new IllegalStateException("kernel already started");
+        priorityInheritance = on;
+    }
+
+    // Reads the kernel clock directly (like a vDSO): no kernel entry, no context switch.
+    // Virtual time in simulation mode, otherwise the monotonic System.nanoTime().
+    public static long GetTimeNanos() {
+        ensureKernel();
+        if (!(ki.getScheduler().getClock() instanceof VirtualClock vc)) return System.nanoTime();
+        Instant now = vc.instant();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    // ----- Checkpoint / restore -----
+    /** Writes the whole kernel state to {@code path}; returns false if the file could not be written. */
+    public static boolean Checkpoint(String path) {
+        enterSyscall();
+        parameters.clear();
+        parameters.add(path);
+        currentCall = CallType.Checkpoint;
+        Object rv = startTheKernel();
+        return Boolean.TRUE.equals(rv);
+    }
+
+    // ----- Metrics -----
+    // in-process view of the same numbers, for benchmarks
+    static Metrics GetMetrics() {
+        ensureKernel();
+        return ki.getMetrics();
+    }
+
+    /**
+     * Serves live kernel metrics (Prometheus text) on http://127.0.0.1:port/metrics from a
+     * background thread; port 0 picks a free one. Returns the bound port.
+     */
+    public static synchronized int StartMetricsServer(int port) {
+        ensureKernel();
+        if (metricsServer != null) throw new IllegalStateException("metrics server already running");
+        try {
+            MetricsServer server = new MetricsServer(ki.getMetrics(), port);
+            server.start();
+            metricsServer = server;
+            return server.getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start metrics server on port " + port, e);
+        }
+    }
+
+    /** Stops the server started by StartMetricsServer, if any. */
+    public static synchronized void StopMetricsServer() {
+        if (metricsServer == null) return;
+        metricsServer.stop();
+        metricsServer = null;
+    }
+
     // ----- Startup -----
     public static void Startup(UserlandProcess initial) {
         ensureKernel();
@@ -115,6 +347,21 @@ public class OS {
         SwitchProcess();
     }
 
+    /**
+     * Boots from a Checkpoint() file instead of an init process; see KernelSnapshot for what is restored.
+     * Restored processes start in {@link Process#resume()}, which reruns main() unless overridden,
+     * so work main() did before the checkpoint (e.g. creating children) happens again.
+     */
+    public static void StartupFromSnapshot(String path, Function<String, UserlandProcess> factory) {
+        ensureKernel();
+        try {
+            KernelSnapshot.read(ki, Path.of(path), factory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore " + path, e);
+        }
+        SwitchProcess();
+    }
+
     public static void Startup(Class<? extends UserlandProcess> clazz) {
         try {
             UserlandProcess p = clazz.getDeclaredConstructor().newInstance();
@@ -142,6 +389,15 @@ public class OS {
         GetPIDByName,
         WaitForMessage,
         Exit,
+        Checkpoint,
+        CreateMutex,
+        CreateSemaphore,
+        Acquire,
+        Release,
+        CreateGroup,
+        WaitForChild,
+        Kill,
+        IgnoreChildExits,
         NONE
     }
 
@@ -1,4 +1,8 @@
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class PCB {
     private static int nextPid = 1;
@@ -13,19 +17,70 @@ public class PCB {
     boolean exiting = false;
     boolean sleeping = false;
 
+    Object pendingRetVal; // syscall result held while switched out, handed back on dispatch
+    ProcessGroup group;
+
+    // ----- run-queue links (owned by RunQueue) and sleep entry, for O(1) unlinking -----
+    PCB qPrev, qNext;
+    RunQueue.Lane qLane;
+    Scheduler.SleepEntry sleepEntry;
+
+    // ----- lifecycle -----
+    int parentPid;                              // 0 = created from the host
+    int exitCode;
+    int waitingFor;                             // child pid this process is blocked on, 0 = none
+    private Map<Integer, Integer> exitedChildren; // pid -> exit code, until collected by WaitForChild
+    boolean ignoreChildExits;                   // set by IgnoreChildExits: don't keep exitedChildren
+
+    // ----- memory accounting (virtual address -> size; addresses are per process) -----
+    static final int PAGE_SIZE = 1024;
+    private Map<Integer, Integer> allocations;
+    private int nextAddress = 0;
+
+    // ----- lock state (priority inheritance) -----
+    private OS.PriorityType basePriority;      // own priority while boosted, null otherwise
+    KernelLock blockedOn;
+    final List<KernelLock> heldMutexes = new ArrayList<>(1);
+
     // ----- device table (maps user-visible fd -> VFS id) -----
     private final int[] fds = new int[10];
 
     PCB(UserlandProcess up, OS.PriorityType priority) {
-        this.pid = nextPid++;
+        this(up, priority, nextPid++);
+    }
+
+    // restore path: keep the checkpointed pid and make sure new pids don't collide with it
+    PCB(UserlandProcess up, OS.PriorityType priority, int pid) {
+        this.pid = pid;
         this.up = up;
         this.priority = priority;
         Arrays.fill(fds, -1);
+        if (pid >= nextPid) nextPid = pid + 1;
     }
 
+    static int peekNextPid() { return nextPid; }
+    static void advanceNextPid(int atLeast) { if (atLeast > nextPid) nextPid = atLeast; }
+
     public String getName() { return up.getClass().getSimpleName(); }
+    String getProcessClassName() { return up.getClass().getName(); }
+    boolean isIdle() { return up instanceof IdleProcess; }
     OS.PriorityType getPriority() { return priority; }
     public void setPriority(OS.PriorityType newPriority) { priority = newPriority; }
+    OS.PriorityType getBasePriority() { return (basePriority != null) ? basePriority : priority; }
+    boolean isBoosted() { return basePriority != null; }
+
+    // temporarily run at p on behalf of a waiter; remembers the own priority once
+    void boostTo(OS.PriorityType p) {
+        if (basePriority == null) basePriority = priority;
+        setPriority(p);
+    }
+
+    // drop back to the own priority, or to a still-needed boost
+    void unboostTo(OS.PriorityType p) {
+        if (basePriority == null) return;
+        if (p.ordinal() >= basePriority.ordinal()) { setPriority(basePriority); basePriority = null; }
+        else setPriority(p);
+    }
 
     public void markTimeoutSignal() { timeoutSignaled = true; }
     public boolean consumeTimeoutSignal() {
@@ -33,6 +88,9 @@ public class PCB {
     }
     public void resetTimeoutCounter() { consecutiveTimeouts = 0; }
     public int incTimeoutCounterAndGet() { return ++consecutiveTimeouts; }
+    int getTimeoutCounter() { return consecutiveTimeouts; }
+    void restoreBasePriority(OS.PriorityType b) { basePriority = b; }
+    void setTimeoutCounter(int c) { consecutiveTimeouts = c; }
 
     public void requestStop() { up.requestStop(); }
 
@@ -44,7 +102,60 @@ public class PCB {
     }
 
     public boolean isDone() { return up.isDone(); }
+    void markReaped() { up.markReaped(); }
     void start() { up.start(); }
+    void awaitTurn() { up.awaitTurn(); }
+    Object takePendingRetVal() { Object rv = pendingRetVal; pendingRetVal = null; return rv; }
+
+    // ----- exit statuses of children not yet waited for -----
+    void recordExitedChild(int pid, int code) {
+        if (exitedChildren == null) exitedChildren = new HashMap<>();
+        exitedChildren.put(pid, code);
+    }
+
+    Integer takeExitedChild(int pid) {
+        if (exitedChildren == null) return null;
+        Integer code = exitedChildren.remove(pid);
+        if (exitedChildren.isEmpty()) exitedChildren = null;
+        return code;
+    }
+
+    Map<Integer, Integer> getExitedChildren() { return (exitedChildren == null) ? Map.of() : exitedChildren; }
+    void restoreExitedChildren(Map<Integer, Integer> m) { exitedChildren = m.isEmpty() ? null : m; }
+
+    // ----- memory helpers (accounting only; the simulator has no real address space) -----
+    int allocate(int size) {
+        long pages = (size + (long) PAGE_SIZE - 1) / PAGE_SIZE;
+        if (size <= 0 || nextAddress + pages * PAGE_SIZE > Integer.MAX_VALUE) return -1;
+        int addr = nextAddress;
+        nextAddress += (int) (pages * PAGE_SIZE);
+        if (allocations == null) allocations = new HashMap<>();
+        allocations.put(addr, size);
+        return addr;
+    }
+
+    boolean free(int pointer, int size) {
+        if (allocations == null) return false;
+        Integer sz = allocations.get(pointer);
+        if (sz == null || sz != size) return false;
+        allocations.remove(pointer);
+        return true;
+    }
+
+    long releaseAllMemory() {
+        if (allocations == null) return 0;
+        long total = 0;
+        for (int sz : allocations.values()) total += sz;
+        allocations = null;
+        return total;
+    }
+
+    Map<Integer, Integer> getAllocations() { return (allocations == null) ? Map.of() : allocations; }
+    int getNextAddress() { return nextAddress; }
+    void restoreMemory(Map<Integer, Integer> allocs, int next) {
+        allocations = allocs.isEmpty() ? null : allocs;
+        nextAddress = next;
+    }
 
     // ----- device helpers -----
     public int[] getFdTable() { return fds; }
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Worst-case mutex wait of a realtime process with and without priority inheritance.
+ * Classic inversion setup in virtual time: a background process holds a mutex for several
+ * quanta, interactive CPU hogs compete with it, and a realtime process periodically needs
+ * the mutex. Without inheritance the holder only runs on the background share of the lottery.
+ * Each mode runs in its own JVM (see BenchmarkHarness).
+ * Usage: java PriorityInversionBenchmark [iterations=500] [seed=1]
+ */
+public class PriorityInversionBenchmark {
+    private static final CountDownLatch done = new CountDownLatch(1);
+    private static long[] waits;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+        long seed = (args.length > 1) ? Long.parseLong(args[1]) : 1L;
+        if (args.length > 2) {
+            runScenario(iterations, seed, Boolean.parseBoolean(args[2]));
+            return;
+        }
+        BenchmarkHarness.runModesInChildJvms(PriorityInversionBenchmark.class,
+                List.of(String.valueOf(iterations), String.valueOf(seed)), "true", "false");
+    }
+
+    private static void runScenario(int iterations, long seed, boolean inherit) throws InterruptedException {
+        waits = new long[iterations];
+        OS.UseVirtualTime(seed);
+        OS.UsePriorityInheritance(inherit);
+        OS.Startup(new Setup(iterations));
+        done.await();
+
+        long[] w = waits.clone();
+        Arrays.sort(w);
+        double mean = Arrays.stream(w).average().orElse(0) / 1e6;
+        System.out.printf("inheritance=%-5s realtime mutex wait: mean %.2f ms, p99 %.2f ms, max %.2f ms (%d acquisitions)%n",
+                inherit, mean, w[(int) Math.ceil(0.99 * w.length) - 1] / 1e6, w[w.length - 1] / 1e6, w.length);
+        System.exit(0);
+    }
+
+    private static final class Setup extends UserlandProcess {
+        private final int iterations;
+        Setup(int iterations) { this.iterations = iterations; }
+
+        @Override
+        public void main() {
+            int m = OS.CreateMutex();
+            OS.CreateProcess(new IdleProcess(), OS.PriorityType.background);
+            OS.CreateProcess(new Holder(m), OS.PriorityType.background);
+            for (int i = 0; i < 3; i++) OS.CreateProcess(new BenchmarkHarness.Hog(), OS.PriorityType.interactive);
+            OS.CreateProcess(new RealtimeWaiter(m, iterations), OS.PriorityType.realtime);
+            OS.Exit();
+        }
+    }
+
+    // background work that keeps the shared resource for 10 quanta at a time
+    private static final class Holder extends UserlandProcess {
+        private final int mutex;
+        Holder(int mutex) { this.mutex = mutex; }
+
+        @Override
+        public void main() {
+            while (true) {
+                OS.Acquire(mutex);
+                for (int i = 0; i < 10; i++) cooperate();
+                OS.Release(mutex);
+                OS.Sleep(3);
+            }
+        }
+    }
+
+    private static final class RealtimeWaiter extends UserlandProcess {
+        private final int mutex;
+        private final int iterations;
+        RealtimeWaiter(int mutex, int iterations) { this.mutex = mutex; this.iterations = iterations; }
+
+        @Override
+        public void main() {
+            for (int i = 0; i < iterations; i++) {
+                OS.Sleep(7);
+                long t0 = OS.GetTimeNanos();
+                OS.Acquire(mutex);
+                waits[i] = OS.GetTimeNanos() - t0;
+                OS.Release(mutex);
+            }
+            done.countDown();
+            OS.Exit();
+        }
+    }
+}
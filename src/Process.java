@@ -1,30 +1,103 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public abstract class Process implements Runnable {
-    private final Thread thread = new Thread(this, this.getClass().getSimpleName() + "-thread");
+    // Backing threads come from a shared pool: taken on first dispatch, handed back as soon as
+    // the process exits, so short-lived processes don't each pay for a thread start.
+    private static final ExecutorService THREADS = Executors.newCachedThreadPool();
+
+    // the process whose main() the current pool thread is running
+    private static final ThreadLocal<Process> CURRENT = new ThreadLocal<>();
+
+    private boolean started;
+    private volatile boolean done;
+    private volatile boolean reaped;
+    private volatile boolean restored;
     private final Semaphore sem = new Semaphore(0);
 
-    public Process() { thread.start(); }
+    public Process() {}
 
     public abstract void main();
 
-    public void start() { this.sem.release(); }
+    /**
+     * Entry point of a process brought back by a snapshot restore. Userland stacks are not
+     * checkpointed, so by default this reruns main() from the top, repeating whatever main()
+     * did before the checkpoint (spawning children, opening files). Override to pick up instead.
+     */
+    protected void resume() { main(); }
+    void markRestored() { restored = true; }
+
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            THREADS.execute(this);
+        }
+        this.sem.release();
+    }
     public void stop() { this.sem.drainPermits(); }
     public boolean isStopped() { return this.sem.availablePermits() == 0; }
-    public boolean isDone() { return !this.thread.isAlive(); }
+    void awaitTurn() { this.sem.acquireUninterruptibly(); } // block until dispatched again
+    // timed variant for the kernel's idle wait; false on timeout
+    boolean awaitTurn(long timeoutMillis) {
+        try {
+            return this.sem.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    public boolean isDone() { return done; }
+
+    // Called by the kernel once this process is gone: wakes its parked thread so it can unwind.
+    synchronized void markReaped() {
+        reaped = true;
+        if (started) this.sem.release();
+    }
+
+    // First thing in every syscall: a reaped process's thread may still be running user
+    // catch/finally blocks on the way out, and must not touch OS state while the kernel does.
+    static void exitIfReaped() {
+        Process p = CURRENT.get();
+        if (p != null && p.reaped) throw new ExitSignal();
+    }
+
+    // the process this thread runs, null on host threads
+    static Process current() { return CURRENT.get(); }
     public void requestStop() {} // overridden in userland if needed
 
     @Override
     public void run() {
-        while (true) {
-            this.sem.acquireUninterruptibly();
-            this.main();
+        Thread.currentThread().setName(this.getClass().getSimpleName() + "-thread");
+        CURRENT.set(this);
+        this.sem.acquireUninterruptibly();
+        try {
+            try {
+                if (restored) this.resume(); else this.main();
+            } catch (ExitSignal e) {
+                throw e;
+            } catch (Throwable t) { // Errors too: a process that dies must still hand the CPU back
+                t.printStackTrace();
+                OS.Exit(1);
+            }
+            OS.Exit(0); // falling off main() is a normal exit
+        } catch (ExitSignal ignored) {
+            // the kernel has already reaped this process; just give the thread back
+        } finally {
+            CURRENT.remove();
+            done = true;
         }
     }
 
+    // the syscall itself parks this thread until the scheduler hands the CPU back
     public void cooperate() {
-        this.stop();
         OS.switchProcess();
-        this.sem.acquireUninterruptibly();
+    }
+
+    /** Thrown by OS.Exit to unwind the exiting process's stack back into run(). */
+    static final class ExitSignal extends Error {
+        private static final long serialVersionUID = 1L;
+        ExitSignal() { super(null, null, false, false); }
     }
 }
@@ -0,0 +1,75 @@
+/**
+ * cgroup-like container for a set of processes: a CPU weight and resource caps, plus usage
+ * accounting. Group 0 ("root") is unlimited and holds every process not placed elsewhere;
+ * children land in their creator's group unless CreateProcess names one.
+ *
+ * CPU shares are weights, not percentages: among runnable groups at the same priority the
+ * scheduler serves the one with the least CPU time per share. Shares do not reach across
+ * levels (the priority lottery runs first), so each group also has a priority cap: its
+ * processes are created at no more urgent a level than maxPriority. Only the host and
+ * root-group processes may create groups or place processes outside their own group.
+ * Usage fields are written by the kernel thread only and are volatile so metrics scrapes can read them.
+ */
+public class ProcessGroup {
+    public static final int ROOT_ID = 0;
+    public static final int DEFAULT_SHARES = 1024;
+
+    final int id;
+    final String name;
+    final int cpuShares;
+    final int maxFds;          // -1 = unlimited
+    final long maxMemory;      // bytes, -1 = unlimited
+    final OS.PriorityType maxPriority; // most urgent level its processes are created at
+
+    // ----- usage -----
+    volatile long cpuNanos;
+    volatile int openFds;
+    volatile long memoryBytes;
+    volatile int processes;
+
+    // ----- scheduling -----
+    double vruntime;           // cpu nanos / share, plus catch-up when the group wakes from idle
+    int runnable;              // PCBs of this group currently in a run queue
+
+    ProcessGroup(int id, String name, int cpuShares, int maxFds, long maxMemory, OS.PriorityType maxPriority) {
+        this.id = id;
+        this.name = name;
+        this.cpuShares = cpuShares;
+        this.maxFds = maxFds;
+        this.maxMemory = maxMemory;
+        this.maxPriority = maxPriority;
+    }
+
+    // requests above the cap run at the cap
+    OS.PriorityType clamp(OS.PriorityType p) {
+        return (p.ordinal() < maxPriority.ordinal()) ? maxPriority : p;
+    }
+
+    void charge(long nanos) {
+        cpuNanos += nanos;
+        vruntime += (double) nanos / cpuShares;
+    }
+
+    // a group that sat idle doesn't get to bank that time and then hog the CPU
+    void catchUpTo(double floor) { if (vruntime < floor) vruntime = floor; }
+
+    boolean tryOpenFd() {
+        if (maxFds >= 0 && openFds >= maxFds) return false;
+        openFds++;
+        return true;
+    }
+    void fdClosed() { if (openFds > 0) openFds--; }
+
+    boolean tryAllocate(long bytes) {
+        if (maxMemory >= 0 && memoryBytes + bytes > maxMemory) return false;
+        memoryBytes += bytes;
+        return true;
+    }
+    void freed(long bytes) { memoryBytes = Math.max(0, memoryBytes - bytes); }
+
+    public String getName() { return name; }
+    public long getCpuNanos() { return cpuNanos; }
+    public int getOpenFds() { return openFds; }
+    public long getMemoryBytes() { return memoryBytes; }
+    public int getProcessCount() { return processes; }
+}
@@ -60,4 +60,9 @@ public class RandomDevice implements Device {
     public int Write(int id, byte[] data) {
         return 0; // no-op
     }
+
+    // ----- snapshot support -----
+    Random getSlot(int id) { return (id >= 0 && id < slots.length) ? slots[id] : null; }
+    void restoreSlot(int id, Random r) { slots[id] = r; }
+    int slotCount() { return slots.length; }
 }
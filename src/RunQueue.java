@@ -0,0 +1,92 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * One priority level's runnable processes, FIFO within each process group.
+ * pollFirst() serves the group with the lowest vruntime (CPU time per share), so a group
+ * with many runnable processes gets its share of this level, not a slot per process.
+ * Groups are few, so the pick is a scan over groups; insertion order breaks ties, which
+ * keeps virtual-time runs deterministic.
+ *
+ * Each group's FIFO is an intrusive doubly-linked list threaded through the PCBs
+ * (qPrev/qNext/qLane), so remove() of an arbitrary PCB is O(1).
+ */
+public class RunQueue implements Iterable<PCB> {
+    static final class Lane {
+        final RunQueue owner;
+        PCB head, tail;
+        Lane(RunQueue owner) { this.owner = owner; }
+    }
+
+    private final Map<ProcessGroup, Lane> lanes = new LinkedHashMap<>();
+    private int size;
+
+    void addLast(PCB pcb) {
+        Lane lane = lanes.computeIfAbsent(pcb.group, g -> new Lane(this));
+        pcb.qLane = lane;
+        pcb.qPrev = lane.tail;
+        pcb.qNext = null;
+        if (lane.tail == null) lane.head = pcb; else lane.tail.qNext = pcb;
+        lane.tail = pcb;
+        pcb.group.runnable++;
+        size++;
+    }
+
+    PCB pollFirst() {
+        Lane best = null;
+        double bestV = Double.MAX_VALUE;
+        for (Map.Entry<ProcessGroup, Lane> e : lanes.entrySet()) {
+            if (e.getValue().head == null) continue;
+            double v = e.getKey().vruntime;
+            if (v < bestV) { bestV = v; best = e.getValue(); }
+        }
+        if (best == null) return null;
+        PCB pcb = best.head;
+        unlink(pcb);
+        return pcb;
+    }
+
+    boolean remove(PCB pcb) {
+        if (pcb.qLane == null || pcb.qLane.owner != this) return false;
+        unlink(pcb);
+        return true;
+    }
+
+    private void unlink(PCB pcb) {
+        Lane lane = pcb.qLane;
+        if (pcb.qPrev == null) lane.head = pcb.qNext; else pcb.qPrev.qNext = pcb.qNext;
+        if (pcb.qNext == null) lane.tail = pcb.qPrev; else pcb.qNext.qPrev = pcb.qPrev;
+        pcb.qPrev = pcb.qNext = null;
+        pcb.qLane = null;
+        pcb.group.runnable--;
+        size--;
+    }
+
+    boolean isEmpty() { return size == 0; }
+    int size() { return size; }
+
+    // group by group, FIFO within a group; lazy, so callers can stop early
+    @Override
+    public Iterator<PCB> iterator() {
+        Iterator<Lane> rest = lanes.values().iterator();
+        return new Iterator<>() {
+            private PCB nextPcb;
+
+            @Override
+            public boolean hasNext() {
+                while (nextPcb == null && rest.hasNext()) nextPcb = rest.next().head;
+                return nextPcb != null;
+            }
+
+            @Override
+            public PCB next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                PCB p = nextPcb;
+                nextPcb = p.qNext;
+                return p;
+            }
+        };
+    }
+}
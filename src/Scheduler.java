@@ -1,44 +1,124 @@
-import OS.PriorityType;
 import java.time.Clock;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
 
 /**
  * Multi-queue scheduler with Sleep/wakeup support and basic demotion on repeated timeouts.
  * Modified to notify Kernel to close all devices when a process exits.
+ *
+ * With a {@link VirtualClock} the scheduler owns time: every dispatch costs one quantum and,
+ * when nothing but idle work is runnable, the clock jumps to the next sleeper's deadline.
+ * Together with a seeded rng that makes a run deterministic and independent of wall time.
+ *
+ * Also owns the kernel mutexes/semaphores. A process blocked on a lock sits in that lock's
+ * wait queue, not in a run queue. While a more urgent process waits on a mutex, the owner
+ * runs at the waiter's priority (transitively along owner chains) until it releases.
+ *
+ * Process groups: the lottery still picks the priority level, then that level's
+ * {@link RunQueue} serves the group with the least CPU time per share. Every dispatch
+ * is charged to the outgoing process's group (one quantum in virtual time, measured
+ * nanos otherwise).
+ *
+ * Exit and Kill reap a process: a killed process is unlinked in O(1) from its run queue or
+ * the sleeper heap (lazily, the heap entry is just cancelled), and in O(waiters) from a lock
+ * wait queue, which a most-urgent-first pick scans anyway. Its exit code goes to the parent,
+ * either straight to a parent blocked in WaitForChild or into the parent's table of unreaped
+ * children, unless the parent ignores child exits.
  */
 public class Scheduler {
     public PCB currentlyRunning;
-    private final Deque<PCB> rtQ  = new ArrayDeque<>();
-    private final Deque<PCB> intQ = new ArrayDeque<>();
-    private final Deque<PCB> bgQ  = new ArrayDeque<>();
+    private final RunQueue rtQ  = new RunQueue();
+    private final RunQueue intQ = new RunQueue();
+    private final RunQueue bgQ  = new RunQueue();
     private final PriorityQueue<SleepEntry> sleepers = new PriorityQueue<>();
-    private final Random rng = new Random();
-    private final Clock clock = Clock.systemUTC();
-    private SwitchReason lastReason = SwitchReason.PREEMPT_OR_COOPERATE;
+    private int cancelledSleepers; // entries of reaped processes still in the heap
+    private final Map<Integer, PCB> processes = new HashMap<>(); // live pid -> PCB
+    private final Map<Integer, KernelLock> locks = new HashMap<>();
+    private int nextLockId = 1;
+    private boolean priorityInheritance = true;
+    private final Map<Integer, ProcessGroup> groups = new HashMap<>();
+    private int nextGroupId = ProcessGroup.ROOT_ID + 1;
+    private double vruntimeFloor;   // vruntime of the last group served; where waking groups rejoin
+    private long dispatchedAtNanos; // wall-time start of the current dispatch
+    private Random rng; // replaced on snapshot restore
+    private final Clock clock;
+    private final VirtualClock virtualClock; // null when running on wall time
+    static final long VIRTUAL_QUANTUM_MILLIS = 1;
 
     private final Kernel kernel;
 
     public Scheduler(Kernel kernel) {
+        this(kernel, Clock.systemUTC(), new Random());
+    }
+
+    public Scheduler(Kernel kernel, Clock clock, Random rng) {
         this.kernel = kernel;
+        this.clock = clock;
+        this.rng = rng;
+        this.virtualClock = (clock instanceof VirtualClock vc) ? vc : null;
+        addGroup(new ProcessGroup(ProcessGroup.ROOT_ID, "root", ProcessGroup.DEFAULT_SHARES, -1, -1,
+                OS.PriorityType.realtime));
+    }
+
+    public Clock getClock() { return clock; }
+
+    // children join their creator's group (root for processes created from the host)
+    public int CreateProcess(UserlandProcess up, OS.PriorityType priority) {
+        ProcessGroup g = (currentlyRunning != null) ? currentlyRunning.group : groups.get(ProcessGroup.ROOT_ID);
+        return CreateProcess(up, priority, g.id);
     }
 
-    public int CreateProcess(UserlandProcess up, PriorityType priority) {
+    public int CreateProcess(UserlandProcess up, OS.PriorityType priority, int groupId) {
+        ProcessGroup g = groups.get(groupId);
+        if (g == null) return -1;
+        if (!mayManageGroups() && g != currentlyRunning.group) return -1;
+        priority = g.clamp(priority);
         PCB pcb = new PCB(up, priority);
+        pcb.group = g;
+        pcb.parentPid = (currentlyRunning != null) ? currentlyRunning.pid : 0;
+        g.processes++;
+        processes.put(pcb.pid, pcb);
         enqueueByPriority(pcb, priority);
         return pcb.pid;
     }
 
+    // ----- process groups -----
+    /**
+     * cpuShares must be positive; -1 for maxFds / maxMemory means unlimited. Returns the group id,
+     * or -1 for bad arguments or a caller outside the root group.
+     */
+    public int CreateGroup(String name, int cpuShares, int maxFds, long maxMemory, OS.PriorityType maxPriority) {
+        if (!mayManageGroups()) return -1;
+        if (name == null || cpuShares <= 0 || maxFds < -1 || maxMemory < -1 || maxPriority == null) return -1;
+        ProcessGroup g = new ProcessGroup(nextGroupId++, name, cpuShares, maxFds, maxMemory, maxPriority);
+        g.vruntime = vruntimeFloor;
+        addGroup(g);
+        return g.id;
+    }
+
+    public ProcessGroup getGroup(int id) { return groups.get(id); }
+
+    // a tenant must not escape its caps by making a new group or spawning into root
+    private boolean mayManageGroups() {
+        return currentlyRunning == null || currentlyRunning.group.id == ProcessGroup.ROOT_ID;
+    }
+
+    private void addGroup(ProcessGroup g) {
+        groups.put(g.id, g);
+        if (kernel != null) kernel.getMetrics().registerGroup(g);
+    }
+
     public void Sleep(int ms) {
         if (currentlyRunning != null) {
             long wakeAt = clock.millis() + Math.max(0L, ms);
-            sleepers.add(new SleepEntry(currentlyRunning, wakeAt));
+            SleepEntry e = new SleepEntry(currentlyRunning, wakeAt);
+            currentlyRunning.sleepEntry = e;
+            sleepers.add(e);
             currentlyRunning.sleeping = true;
             currentlyRunning.resetTimeoutCounter();
         }
-        lastReason = SwitchReason.SLEEP;
         pickNextAndSet();
     }
 
@@ -46,20 +126,95 @@ public class Scheduler {
         return (currentlyRunning == null) ? -1 : currentlyRunning.pid;
     }
 
-    public void ExitCurrent() {
-        if (currentlyRunning != null) {
-            currentlyRunning.exiting = true;
-            // Close its devices right away
-            if (kernel != null) kernel.closeAllDevicesFor(currentlyRunning);
-        }
-        lastReason = SwitchReason.EXIT;
+    public void ExitCurrent(int exitCode) {
+        if (currentlyRunning != null) reap(currentlyRunning, exitCode);
         pickNextAndSet();
     }
 
+    public static final int KILLED_EXIT_CODE = 137; // 128 + SIGKILL, as a shell would report it
+
+    /** Reaps a live child of the caller wherever it is parked. Only the parent may kill. */
+    public boolean Kill(int pid) {
+        PCB target = processes.get(pid);
+        PCB cur = currentlyRunning;
+        if (target == null || cur == null || target.parentPid != cur.pid) return false;
+        reap(target, KILLED_EXIT_CODE);
+        return true;
+    }
+
+    // statuses of exited children are dropped from now on, and any already kept are discarded
+    public void IgnoreChildExits() {
+        PCB cur = currentlyRunning;
+        if (cur == null) return;
+        cur.ignoreChildExits = true;
+        cur.restoreExitedChildren(Map.of());
+    }
+
+    /**
+     * Blocks until child pid exits and returns its exit code, or returns it at once if the child
+     * already exited. -1 if pid is not a child of the caller (or its status was already collected).
+     */
+    public int WaitForChild(int pid) {
+        PCB cur = currentlyRunning;
+        if (cur == null) return -1;
+        Integer code = cur.takeExitedChild(pid);
+        if (code != null) return code;
+        PCB child = processes.get(pid);
+        if (child == null || child.parentPid != cur.pid) return -1;
+        cur.waitingFor = pid;
+        cur.resetTimeoutCounter();
+        pickNextAndSet();
+        return -1; // placeholder, reap() hands the real exit code over via pendingRetVal
+    }
+
+    // Drops every scheduler reference to pcb, releases what it holds and reports the exit to its parent.
+    private void reap(PCB pcb, int exitCode) {
+        pcb.exiting = true;
+        pcb.exitCode = exitCode;
+        processes.remove(pcb.pid);
+
+        // unlink from wherever it is still parked; O(1) except the lock wait queue (O(waiters))
+        if (pcb.qLane != null) pcb.qLane.owner.remove(pcb);
+        if (pcb.sleepEntry != null) {
+            pcb.sleepEntry.pcb = null;
+            pcb.sleepEntry = null;
+            cancelledSleepers++;
+        }
+        if (pcb.blockedOn != null) {
+            KernelLock l = pcb.blockedOn;
+            l.waiters.remove(pcb);
+            pcb.blockedOn = null;
+            if (l.mutex) deflate(l.owner); // its boost may have been for this waiter
+        }
+        pcb.sleeping = false;
+        pcb.waitingFor = 0;
+
+        pcb.group.processes--;
+        pcb.group.freed(pcb.releaseAllMemory());
+        // don't strand waiters behind a dead owner
+        while (!pcb.heldMutexes.isEmpty()) handOff(pcb.heldMutexes.get(0), pcb);
+        // Close its devices right away
+        if (kernel != null) kernel.closeAllDevicesFor(pcb);
+        // statuses of its own unreaped children have nobody left to collect them
+        pcb.restoreExitedChildren(Map.of());
+        pcb.markReaped();
+
+        PCB parent = processes.get(pcb.parentPid);
+        if (parent == null) return;
+        if (parent.waitingFor == pcb.pid) {
+            parent.waitingFor = 0;
+            parent.pendingRetVal = exitCode;
+            enqueueByPriority(parent, parent.getPriority());
+        } else if (!parent.ignoreChildExits) {
+            parent.recordExitedChild(pcb.pid, exitCode);
+        }
+    }
+
     public void SwitchProcess() {
         awakenSleepers();
 
-        if (currentlyRunning != null && lastReason == SwitchReason.PREEMPT_OR_COOPERATE) {
+        // Sleep/Exit already picked a successor, so whoever is current here yielded voluntarily
+        if (currentlyRunning != null) {
             PCB cur = currentlyRunning;
 
             // If the running process is exiting or done, do NOT requeue; close if needed
@@ -68,12 +223,12 @@ public class Scheduler {
             } else {
                 boolean wasTimeout = cur.consumeTimeoutSignal();
                 if (wasTimeout) {
-                    PriorityType p = cur.getPriority();
-                    if (p == PriorityType.realtime || p == PriorityType.interactive) {
+                    OS.PriorityType p = cur.getPriority();
+                    if (p == OS.PriorityType.realtime || p == OS.PriorityType.interactive) {
                         int c = cur.incTimeoutCounterAndGet();
                         if (c > 5) {
-                            if (p == PriorityType.realtime) cur.setPriority(PriorityType.interactive);
-                            else cur.setPriority(PriorityType.background);
+                            if (p == OS.PriorityType.realtime) cur.setPriority(OS.PriorityType.interactive);
+                            else cur.setPriority(OS.PriorityType.background);
                             cur.resetTimeoutCounter();
                         }
                     }
@@ -84,11 +239,110 @@ public class Scheduler {
             }
         }
 
-        lastReason = SwitchReason.PREEMPT_OR_COOPERATE;
         pickNextAndSet();
     }
 
-    private void enqueueByPriority(PCB pcb, PriorityType p) {
+    // ----- locks -----
+    public void setPriorityInheritance(boolean on) { priorityInheritance = on; }
+
+    public int CreateLock(boolean mutex, int permits) {
+        if (permits < 0) return -1;
+        KernelLock l = new KernelLock(nextLockId++, mutex, mutex ? 1 : permits);
+        locks.put(l.id, l);
+        return l.id;
+    }
+
+    /** Takes a permit, or parks the caller in the lock's wait queue. False for a bad id or re-locking an owned mutex. */
+    public boolean Acquire(int id) {
+        KernelLock l = locks.get(id);
+        PCB cur = currentlyRunning;
+        if (l == null || cur == null || (l.mutex && l.owner == cur)) return false;
+        if (l.permits > 0) {
+            l.permits--;
+            if (l.mutex) { l.owner = cur; cur.heldMutexes.add(l); }
+            return true;
+        }
+        l.waiters.addLast(cur);
+        cur.blockedOn = l;
+        cur.resetTimeoutCounter();
+        if (l.mutex && priorityInheritance) inherit(l.owner, cur.getPriority());
+        pickNextAndSet();
+        return true;
+    }
+
+    /** Hands the permit to the most urgent waiter (which becomes runnable) or returns it. Caller keeps running. */
+    public boolean Release(int id) {
+        KernelLock l = locks.get(id);
+        PCB cur = currentlyRunning;
+        if (l == null || cur == null) return false;
+        if (l.mutex && l.owner != cur) return false;
+        handOff(l, cur);
+        return true;
+    }
+
+    private void handOff(KernelLock l, PCB releaser) {
+        if (l.mutex) {
+            l.owner = null;
+            releaser.heldMutexes.remove(l);
+            if (releaser.isBoosted()) releaser.unboostTo(inheritedPriority(releaser));
+        }
+        PCB w = l.pollWaiter();
+        if (w == null) {
+            l.permits++;
+            return;
+        }
+        w.blockedOn = null;
+        if (l.mutex) {
+            l.owner = w;
+            w.heldMutexes.add(l);
+            OS.PriorityType top = l.topWaiterPriority();
+            if (top != null && priorityInheritance) inherit(w, top);
+        }
+        enqueueByPriority(w, w.getPriority());
+    }
+
+    // raise owner (and whoever it is waiting behind) to at least p
+    private void inherit(PCB owner, OS.PriorityType p) {
+        while (owner != null && p.ordinal() < owner.getPriority().ordinal()) {
+            OS.PriorityType old = owner.getPriority();
+            boolean queued = owner != currentlyRunning && !owner.sleeping && owner.blockedOn == null
+                    && runQueue(old).remove(owner);
+            owner.boostTo(p);
+            if (queued) enqueueByPriority(owner, p);
+            owner = (owner.blockedOn != null && owner.blockedOn.mutex) ? owner.blockedOn.owner : null;
+        }
+    }
+
+    // after a waiter went away: drop boosts no longer needed, down the owner chain
+    private void deflate(PCB owner) {
+        while (owner != null && owner.isBoosted()) {
+            OS.PriorityType old = owner.getPriority();
+            owner.unboostTo(inheritedPriority(owner));
+            if (owner.getPriority() == old) return;
+            if (owner.qLane != null) {
+                owner.qLane.owner.remove(owner);
+                enqueueByPriority(owner, owner.getPriority());
+            }
+            owner = (owner.blockedOn != null && owner.blockedOn.mutex) ? owner.blockedOn.owner : null;
+        }
+    }
+
+    // most urgent priority among waiters of the mutexes pcb still holds (background if none)
+    private OS.PriorityType inheritedPriority(PCB pcb) {
+        OS.PriorityType best = OS.PriorityType.background;
+        for (KernelLock held : pcb.heldMutexes) {
+            OS.PriorityType top = held.topWaiterPriority();
+            if (top != null && top.ordinal() < best.ordinal()) best = top;
+        }
+        return best;
+    }
+
+    private void enqueueByPriority(PCB pcb, OS.PriorityType p) {
+        if (pcb.group.runnable == 0 && pcb != currentlyRunning) pcb.group.catchUpTo(vruntimeFloor);
+        queue(pcb, p);
+    }
+
+    private void queue(PCB pcb, OS.PriorityType p) {
         pcb.sleeping = false;
         switch (p) {
             case realtime -> rtQ.addLast(pcb);
@@ -99,16 +353,58 @@ public class Scheduler {
 
     private void awakenSleepers() {
         long now = clock.millis();
-        while (!sleepers.isEmpty() && sleepers.peek().wakeAtMillis <= now) {
-            PCB pcb = sleepers.poll().pcb;
-            if (!pcb.exiting) enqueueByPriority(pcb, pcb.getPriority());
+        SleepEntry e;
+        while ((e = nextSleeper()) != null && e.wakeAtMillis <= now) {
+            sleepers.poll();
+            e.pcb.sleepEntry = null;
+            enqueueByPriority(e.pcb, e.pcb.getPriority());
         }
     }
 
+    // earliest live sleeper, discarding cancelled entries on the way
+    private SleepEntry nextSleeper() {
+        SleepEntry e;
+        while ((e = sleepers.peek()) != null && e.pcb == null) {
+            sleepers.poll();
+            cancelledSleepers--;
+        }
+        return e;
+    }
+
+    // wall clock only: ms until the earliest sleeper is due, -1 if there is none
+    long millisUntilNextWake() {
+        if (virtualClock != null) return -1;
+        SleepEntry e = nextSleeper();
+        return (e == null) ? -1 : Math.max(0L, e.wakeAtMillis - clock.millis());
+    }
+
+    // the kernel sat idle until a deadline passed; nobody is running, so nothing is charged
+    void dispatchAfterIdle() { pickNextAndSet(); }
+
     private void pickNextAndSet() {
+        long nowNanos = System.nanoTime();
+        if (currentlyRunning != null) {
+            currentlyRunning.group.charge((virtualClock != null)
+                    ? VIRTUAL_QUANTUM_MILLIS * 1_000_000L : nowNanos - dispatchedAtNanos);
+        }
+        if (virtualClock != null) {
+            // charge the process that just ran, then skip dead time straight to the next deadline
+            if (currentlyRunning != null) virtualClock.advance(VIRTUAL_QUANTUM_MILLIS);
+            SleepEntry first = nextSleeper();
+            if (first != null && onlyIdleRunnable()) virtualClock.advanceTo(first.wakeAtMillis);
+        }
         awakenSleepers();
         PCB next = pickNextPCB();
+        if (next != null) vruntimeFloor = Math.max(vruntimeFloor, next.group.vruntime);
         currentlyRunning = next;
+        dispatchedAtNanos = nowNanos;
+    }
+
+    private boolean onlyIdleRunnable() {
+        for (PCB p : rtQ) if (!p.isIdle()) return false;
+        for (PCB p : intQ) if (!p.isIdle()) return false;
+        for (PCB p : bgQ) if (!p.isIdle()) return false;
+        return true;
     }
 
     private PCB pickNextPCB() {
@@ -135,12 +431,55 @@ public class Scheduler {
         }
     }
 
-    private static final class SleepEntry implements Comparable<SleepEntry> {
-        final PCB pcb;
+    // queue lengths are O(1) counters, cheap enough to publish after every syscall
+    void publishGauges(Metrics m) {
+        m.queues(rtQ.size(), intQ.size(), bgQ.size(), sleepers.size() - cancelledSleepers, processes.size());
+    }
+
+    // ----- snapshot support -----
+    RunQueue runQueue(OS.PriorityType p) {
+        return switch (p) {
+            case realtime -> rtQ;
+            case interactive -> intQ;
+            case background -> bgQ;
+        };
+    }
+    PriorityQueue<SleepEntry> sleepers() { return sleepers; } // may hold cancelled entries (pcb == null)
+    Map<Integer, PCB> processes() { return processes; }
+    Map<Integer, KernelLock> locks() { return locks; }
+    int peekNextLockId() { return nextLockId; }
+    Map<Integer, ProcessGroup> groups() { return groups; }
+    int peekNextGroupId() { return nextGroupId; }
+    double getVruntimeFloor() { return vruntimeFloor; }
+    void setVruntimeFloor(double v) { vruntimeFloor = v; }
+    // replaces a same-id group (root) or adds a checkpointed one
+    void restoreGroup(ProcessGroup g, int nextId) {
+        addGroup(g);
+        nextGroupId = Math.max(nextGroupId, nextId);
+    }
+    void restoreLock(KernelLock l, int nextId) {
+        locks.put(l.id, l);
+        nextLockId = Math.max(nextLockId, nextId);
+    }
+    Random getRng() { return rng; }
+    void setRng(Random r) { rng = r; }
+    void restoreQueued(PCB pcb) {
+        processes.put(pcb.pid, pcb);
+        queue(pcb, pcb.getPriority()); // saved vruntimes stand as they are, no idle catch-up
+    }
+    void restoreSleeper(PCB pcb, long wakeAtMillis) {
+        processes.put(pcb.pid, pcb);
+        pcb.sleeping = true;
+        pcb.sleepEntry = new SleepEntry(pcb, wakeAtMillis);
+        sleepers.add(pcb.sleepEntry);
+    }
+    // blocked in a lock's wait queue or in WaitForChild; the caller links it wherever it waits
+    void restoreBlocked(PCB pcb) { processes.put(pcb.pid, pcb); }
+
+    static final class SleepEntry implements Comparable<SleepEntry> {
+        PCB pcb;                // null once cancelled by reap()
         final long wakeAtMillis;
         SleepEntry(PCB pcb, long wakeAtMillis) { this.pcb = pcb; this.wakeAtMillis = wakeAtMillis; }
         public int compareTo(SleepEntry o) { return Long.compare(this.wakeAtMillis, o.wakeAtMillis); }
     }
-
-    private enum SwitchReason { PREEMPT_OR_COOPERATE, SLEEP, EXIT }
 }
@@ -0,0 +1,105 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times KernelSnapshot.write/read for a large process table (default 100k PCBs).
+ * Processes are only created, never dispatched, so no threads are started.
+ * Each round also checks that re-snapshotting the restored kernel gives the same bytes,
+ * so a format change can't silently drop state.
+ * Usage: java SnapshotBenchmark [processes=100000] [rounds=5]
+ */
+public class SnapshotBenchmark {
+    public static void main(String[] args) throws Exception {
+        int n = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        Path file = Files.createTempFile("kernel", ".snap");
+        file.toFile().deleteOnExit();
+        Path again = Files.createTempFile("kernel-again", ".snap");
+        again.toFile().deleteOnExit();
+
+        Kernel source = populate(n);
+        long bestWrite = Long.MAX_VALUE, bestRead = Long.MAX_VALUE;
+        int restored = 0;
+        for (int r = 0; r < rounds; r++) {
+            long t0 = System.nanoTime();
+            KernelSnapshot.write(source, file);
+            long t1 = System.nanoTime();
+            Kernel target = new Kernel(new VirtualClock(), new Random());
+            KernelSnapshot.read(target, file, null);
+            long t2 = System.nanoTime();
+            bestWrite = Math.min(bestWrite, t1 - t0);
+            bestRead = Math.min(bestRead, t2 - t1);
+            restored = count(target);
+            KernelSnapshot.write(target, again);
+            if (!Arrays.equals(Files.readAllBytes(file), Files.readAllBytes(again))) {
+                throw new IllegalStateException("snapshot of the restored kernel differs from the original");
+            }
+        }
+        System.out.printf("%d processes (%d restored), snapshot %d bytes (%.1f B/process)%n",
+                n, restored, Files.size(file), Files.size(file) / (double) n);
+        System.out.printf("best of %d: snapshot %.2f ms, restore %.2f ms%n", rounds, bestWrite / 1e6, bestRead / 1e6);
+    }
+
+    private static Kernel populate(int n) {
+        VirtualClock clock = new VirtualClock();
+        Kernel k = new Kernel(clock, new Random(7));
+        Scheduler s = k.getScheduler();
+        OS.PriorityType[] prios = OS.PriorityType.values();
+        int tenant = s.CreateGroup("tenant", 2048, 8, 1 << 20, OS.PriorityType.interactive);
+        KernelLock mutex = s.locks().get(s.CreateLock(true, 1));
+        for (int i = 0; i < 5; i++) k.Open("random " + i);
+        for (int i = 0; i < n; i++) {
+            UserlandProcess up = switch (i % 3) {
+                case 0 -> new HelloWorld();
+                case 1 -> new GoodbyeWorld();
+                default -> new IdleProcess();
+            };
+            OS.PriorityType p = prios[i % prios.length];
+            if (i % 4 == 0) {
+                // a quarter of the table asleep with staggered deadlines
+                PCB pcb = new PCB(up, p);
+                pcb.group = s.getGroup((i % 8 == 0) ? tenant : ProcessGroup.ROOT_ID);
+                pcb.group.processes++;
+                s.restoreSleeper(pcb, clock.millis() + (i % 1000));
+                // and a sprinkling of per-process state: fds, memory, an unreaped child
+                if (i % 100 == 0) {
+                    pcb.setUserFd(0, i % 5);
+                    pcb.allocate(64 + i % 32);
+                    pcb.recordExitedChild(i + 1, i & 0xFF);
+                }
+            } else if (i % 1000 == 1) {
+                // the first of these owns a mutex, the rest queue behind it
+                PCB pcb = new PCB(up, p);
+                pcb.group = s.getGroup(ProcessGroup.ROOT_ID);
+                pcb.group.processes++;
+                if (mutex.owner == null) {
+                    mutex.owner = pcb;
+                    mutex.permits = 0;
+                    pcb.heldMutexes.add(mutex);
+                    s.restoreQueued(pcb);
+                } else {
+                    mutex.waiters.addLast(pcb);
+                    pcb.blockedOn = mutex;
+                    s.restoreBlocked(pcb);
+                }
+            } else {
+                s.CreateProcess(up, p, (i % 8 == 3) ? tenant : ProcessGroup.ROOT_ID);
+            }
+        }
+        // queued groups behind the floor, which a restore must not catch up
+        s.setVruntimeFloor(5_000);
+        s.getGroup(ProcessGroup.ROOT_ID).vruntime = 3_000;
+        s.getGroup(tenant).vruntime = 1_000;
+        return k;
+    }
+
+    private static int count(Kernel k) {
+        Scheduler s = k.getScheduler();
+        int c = s.sleepers().size();
+        for (KernelLock l : s.locks().values()) c += l.waiters.size();
+        for (OS.PriorityType p : OS.PriorityType.values()) c += s.runQueue(p).size();
+        return c;
+    }
+}
@@ -10,8 +10,14 @@ public class VFS implements Device {
 
     private final RandomDevice random = new RandomDevice();
     private final FakeFileSystem ffs  = new FakeFileSystem();
+    private final Metrics metrics;
 
     public VFS() {
+        this(new Metrics());
+    }
+
+    public VFS(Metrics metrics) {
+        this.metrics = metrics;
         for (int i = 0; i < inner.length; i++) inner[i] = -1;
     }
 
@@ -34,6 +40,21 @@ public class VFS implements Device {
         };
     }
 
+    // ----- snapshot support: device codes 0 = free, 1 = random, 2 = file -----
+    int slotCount() { return dev.length; }
+    int deviceCode(int vfsId) {
+        if (!valid(vfsId)) return 0;
+        return (dev[vfsId] == random) ? 1 : 2;
+    }
+    int innerId(int vfsId) { return inner[vfsId]; }
+    void restoreSlot(int vfsId, int code, int innerId) {
+        dev[vfsId] = (code == 1) ? random : (code == 2) ? ffs : null;
+        inner[vfsId] = (dev[vfsId] == null) ? -1 : innerId;
+        if (dev[vfsId] != null) metrics.deviceOpened(dev[vfsId] == random);
+    }
+    RandomDevice getRandomDevice() { return random; }
+    FakeFileSystem getFileSystem() { return ffs; }
+
     @Override
     public int Open(String s) {
         if (s == null || s.isBlank()) return -1;
@@ -57,6 +78,7 @@ public class VFS implements Device {
 
         dev[vfsSlot] = target;
         inner[vfsSlot] = innerId;
+        metrics.deviceOpened(target == random);
         return vfsSlot;
     }
 
@@ -66,6 +88,7 @@ public class VFS implements Device {
         try {
             dev[vfsId].Close(inner[vfsId]);
         } finally {
+            metrics.deviceClosed(dev[vfsId] == random);
             dev[vfsId] = null;
             inner[vfsId] = -1;
         }
@@ -0,0 +1,30 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Simulation clock that only moves when the scheduler moves it.
+ * Starts at the epoch; advance()/advanceTo() are called from the kernel thread only,
+ * the volatile field lets userland and the host thread read it.
+ * withZone() returns a view that shares (and can advance) the same time.
+ */
+public class VirtualClock extends Clock {
+    private static final class Time { volatile long nowMillis; }
+
+    private final Time time;
+    private final ZoneId zone;
+
+    public VirtualClock() { this(new Time(), ZoneOffset.UTC); }
+    private VirtualClock(Time time, ZoneId zone) { this.time = time; this.zone = zone; }
+
+    public void advance(long ms) { if (ms > 0) time.nowMillis += ms; }
+    public void advanceTo(long targetMillis) { if (targetMillis > time.nowMillis) time.nowMillis = targetMillis; }
+
+    @Override public long millis() { return time.nowMillis; }
+    @Override public Instant instant() { return Instant.ofEpochMilli(time.nowMillis); }
+    @Override public ZoneId getZone() { return zone; }
+    @Override public Clock withZone(ZoneId zone) {
+        return zone.equals(this.zone) ? this : new VirtualClock(time, zone);
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Userland driver that feeds the scheduler a synthetic process mix.
+ * Arrivals are Poisson (exponential gaps) at {@code arrivalsPerSecond} for {@code durationMillis};
+ * each arrival's kind is drawn from the weighted mix and created at that kind's priority.
+ * After the arrival window it waits up to {@code drainMillis} for stragglers, then signals
+ * {@link #awaitFinished()} and exits. Same seed -> same arrival sequence.
+ */
+public class WorkloadGenerator extends UserlandProcess {
+    public static final class Config {
+        long durationMillis = 10_000;
+        long drainMillis = 5_000;
+        double arrivalsPerSecond = 20.0;
+        int burstsPerProcess = 20;
+        long seed = 42L;
+        boolean virtualTime = false;
+        int metricsPort = -1; // -1 = no metrics endpoint
+        final Map<WorkloadProcess.Kind, Integer> weights = new EnumMap<>(WorkloadProcess.Kind.class);
+        final Map<WorkloadProcess.Kind, OS.PriorityType> priorities = new EnumMap<>(WorkloadProcess.Kind.class);
+
+        public Config() {
+            weights.put(WorkloadProcess.Kind.CPU_BOUND, 1);
+            weights.put(WorkloadProcess.Kind.IO_BOUND, 1);
+            weights.put(WorkloadProcess.Kind.BURSTY, 1);
+            weights.put(WorkloadProcess.Kind.SLEEP_HEAVY, 1);
+            priorities.put(WorkloadProcess.Kind.CPU_BOUND, OS.PriorityType.background);
+            priorities.put(WorkloadProcess.Kind.IO_BOUND, OS.PriorityType.interactive);
+            priorities.put(WorkloadProcess.Kind.BURSTY, OS.PriorityType.interactive);
+            priorities.put(WorkloadProcess.Kind.SLEEP_HEAVY, OS.PriorityType.realtime);
+        }
+
+        /**
+         * key=value pairs: duration, drain (ms), rate (arrivals/s), bursts, seed, virtual (true/false),
+         * metrics (port for the live /metrics endpoint),
+         * and per kind: cpu_bound=weight or cpu_bound.priority=background (likewise io_bound, bursty, sleep_heavy).
+         */
+        public static Config parse(String[] args) {
+            Config c = new Config();
+            for (String arg : args) {
+                String[] kv = arg.split("=", 2);
+                if (kv.length != 2) throw new IllegalArgumentException("expected key=value: " + arg);
+                String key = kv[0].trim().toLowerCase();
+                String val = kv[1].trim();
+                switch (key) {
+                    case "duration" -> c.durationMillis = Long.parseLong(val);
+                    case "drain"    -> c.drainMillis = Long.parseLong(val);
+                    case "rate"     -> c.arrivalsPerSecond = Double.parseDouble(val);
+                    case "bursts"   -> c.burstsPerProcess = Integer.parseInt(val);
+                    case "seed"     -> c.seed = Long.parseLong(val);
+                    case "virtual"  -> c.virtualTime = Boolean.parseBoolean(val);
+                    case "metrics"  -> c.metricsPort = Integer.parseInt(val);
+                    default -> {
+                        boolean isPriority = key.endsWith(".priority");
+                        String kindName = isPriority ? key.substring(0, key.length() - ".priority".length()) : key;
+                        WorkloadProcess.Kind k = WorkloadProcess.Kind.valueOf(kindName.toUpperCase());
+                        if (isPriority) c.priorities.put(k, OS.PriorityType.valueOf(val.toLowerCase()));
+                        else c.weights.put(k, Integer.parseInt(val));
+                    }
+                }
+            }
+            return c;
+        }
+    }
+
+    private final Config cfg;
+    private final WorkloadStats stats = new WorkloadStats();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    public WorkloadGenerator(Config cfg) { this.cfg = cfg; }
+
+    public WorkloadStats getStats() { return stats; }
+
+    /** Called from the host thread; returns once the run (including drain) is over. */
+    public void awaitFinished() throws InterruptedException { finished.await(); }
+
+    @Override
+    public void main() {
+        OS.IgnoreChildExits(); // spawns for the whole run and never waits
+        OS.CreateProcess(new IdleProcess(), OS.PriorityType.background);
+
+        Random rng = new Random(cfg.seed);
+        int totalWeight = 0;
+        for (int w : cfg.weights.values()) totalWeight += Math.max(0, w);
+
+        stats.begin();
+        long start = stats.now();
+        long end = start + cfg.durationMillis * 1_000_000L;
+        double nextArrival = start;
+        while (true) {
+            nextArrival += -Math.log(1.0 - rng.nextDouble()) / cfg.arrivalsPerSecond * 1e9;
+            if (nextArrival >= end) break;
+            long waitMs = (long) ((nextArrival - stats.now()) / 1e6);
+            if (waitMs > 0) OS.Sleep((int) waitMs);
+
+            WorkloadProcess.Kind kind = pick(rng, totalWeight);
+            if (kind == null) continue;
+            OS.PriorityType p = cfg.priorities.get(kind);
+            WorkloadProcess wp = new WorkloadProcess(kind, p, cfg.burstsPerProcess, rng.nextLong(), stats);
+            stats.arrived(wp.getSample());
+            OS.CreateProcess(wp, p);
+        }
+
+        // arrivals over; give in-flight processes a bounded amount of time to finish
+        long drainEnd = end + cfg.drainMillis * 1_000_000L;
+        while (stats.inFlight() > 0 && stats.now() < drainEnd) OS.Sleep(10);
+        stats.end();
+        finished.countDown();
+        OS.Exit();
+    }
+
+    private WorkloadProcess.Kind pick(Random rng, int totalWeight) {
+        if (totalWeight <= 0) return null;
+        int roll = rng.nextInt(totalWeight);
+        for (Map.Entry<WorkloadProcess.Kind, Integer> e : cfg.weights.entrySet()) {
+            roll -= Math.max(0, e.getValue());
+            if (roll < 0) return e.getKey();
+        }
+        return null;
+    }
+}
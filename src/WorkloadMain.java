@@ -0,0 +1,19 @@
+/**
+ * Entry point for a workload run: boots the OS with a {@link WorkloadGenerator} as its first
+ * process, waits for the run to finish and prints the per-priority report.
+ * Usage: java WorkloadMain [duration=10000] [rate=20] [seed=42] [virtual=true] [metrics=9400] [cpu_bound=1] [bursty.priority=background] ...
+ */
+public class WorkloadMain {
+    public static void main(String[] args) throws InterruptedException {
+        WorkloadGenerator.Config cfg = WorkloadGenerator.Config.parse(args);
+        if (cfg.virtualTime) OS.UseVirtualTime(cfg.seed); // reproducible, runs as fast as the CPU allows
+        if (cfg.metricsPort >= 0) {
+            System.out.println("metrics on http://127.0.0.1:" + OS.StartMetricsServer(cfg.metricsPort) + "/metrics");
+        }
+        WorkloadGenerator gen = new WorkloadGenerator(cfg);
+        OS.Startup(gen);
+        gen.awaitFinished();
+        System.out.print(gen.getStats().report());
+        System.exit(0); // process threads never return on their own
+    }
+}
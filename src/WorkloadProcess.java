@@ -0,0 +1,81 @@
+/**
+ * Synthetic userland process created by {@link WorkloadGenerator}.
+ * Runs a fixed number of bursts shaped by its {@link Kind}, reports arrival / first run /
+ * completion to {@link WorkloadStats}, then exits.
+ *
+ * CPU demand is counted in work units (a fixed block of arithmetic), so fairness numbers
+ * don't depend on how fast the host happens to be.
+ */
+public class WorkloadProcess extends UserlandProcess {
+    public enum Kind {
+        CPU_BOUND,   // long compute bursts, yields between them
+        IO_BOUND,    // tiny compute, device read, short wait
+        BURSTY,      // mostly idle, occasionally a heavy burst
+        SLEEP_HEAVY  // tiny compute, long sleep (frame/timer style)
+    }
+
+    static final int UNIT_ITERATIONS = 20_000;
+
+    private final Kind kind;
+    private final int bursts;
+    private final long seed;
+    private final WorkloadStats.Sample sample;
+    private final WorkloadStats stats;
+    private long acc; // keeps the work loop from being optimized away
+
+    WorkloadProcess(Kind kind, OS.PriorityType priority, int bursts, long seed, WorkloadStats stats) {
+        this.kind = kind;
+        this.bursts = bursts;
+        this.seed = seed;
+        this.stats = stats;
+        this.sample = new WorkloadStats.Sample(kind, priority);
+    }
+
+    WorkloadStats.Sample getSample() { return sample; }
+
+    @Override
+    public void main() {
+        stats.firstRun(sample);
+        long x = seed | 1L;
+        for (int b = 0; b < bursts; b++) {
+            x ^= x << 13; x ^= x >>> 7; x ^= x << 17;
+            switch (kind) {
+                case CPU_BOUND -> {
+                    work(4);
+                    cooperate();
+                }
+                case IO_BOUND -> {
+                    work(1);
+                    // open/read/close per burst so we never pin one of the 10 VFS slots while waiting
+                    int fd = OS.Open("random " + x);
+                    if (fd >= 0) {
+                        OS.Read(fd, 64);
+                        OS.Close(fd);
+                    }
+                    OS.Sleep(5);
+                }
+                case BURSTY -> {
+                    if ((x & 3) == 0) {
+                        for (int i = 0; i < 8; i++) { work(2); cooperate(); }
+                    } else {
+                        work(1);
+                        OS.Sleep(20);
+                    }
+                }
+                case SLEEP_HEAVY -> {
+                    work(1);
+                    OS.Sleep(50);
+                }
+            }
+        }
+        stats.completed(sample);
+        OS.Exit();
+    }
+
+    private void work(int units) {
+        long a = acc;
+        for (int i = 0; i < units * UNIT_ITERATIONS; i++) a = a * 6364136223846793005L + 1442695040888963407L;
+        acc = a;
+        stats.charge(sample, units);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-process timing samples for a workload run, and the per-priority report built from them.
+ *   turnaround = completion - arrival
+ *   response   = first run - arrival
+ *   fairness   = Jain's index over (work units / turnaround) of completed processes, 1.0 = perfectly fair
+ * Written from process threads and read from the host thread, hence synchronized.
+ */
+public class WorkloadStats {
+    static final class Sample {
+        final WorkloadProcess.Kind kind;
+        final OS.PriorityType priority;
+        long arrivalNanos = -1;
+        long firstRunNanos = -1;
+        long completionNanos = -1;
+        long units;
+
+        Sample(WorkloadProcess.Kind kind, OS.PriorityType priority) {
+            this.kind = kind;
+            this.priority = priority;
+        }
+    }
+
+    private final List<Sample> samples = new ArrayList<>();
+    private long startNanos = -1;
+    private long endNanos = -1;
+    private int inFlight;
+
+    long now() { return OS.GetTimeNanos(); } // virtual time when the OS runs in simulation mode
+
+    synchronized void begin() { startNanos = now(); }
+    synchronized void end() { endNanos = now(); }
+
+    synchronized void arrived(Sample s) {
+        s.arrivalNanos = now();
+        samples.add(s);
+        inFlight++;
+    }
+
+    synchronized void firstRun(Sample s) { s.firstRunNanos = now(); }
+
+    synchronized void completed(Sample s) {
+        s.completionNanos = now();
+        inFlight--;
+    }
+
+    synchronized void charge(Sample s, int units) { s.units += units; }
+
+    synchronized int inFlight() { return inFlight; }
+
+    public synchronized String report() {
+        long end = (endNanos >= 0) ? endNanos : now();
+        double seconds = Math.max(1e-9, (end - startNanos) / 1e9);
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("window %.3f s, %d arrivals, %d still running%n", seconds, samples.size(), inFlight));
+        sb.append(String.format("%-12s %8s %8s %10s %12s %12s %12s %12s %9s%n",
+                "priority", "arrived", "done", "thru/s", "turn avg ms", "turn p95 ms", "resp avg ms", "resp p95 ms", "fairness"));
+        for (OS.PriorityType p : OS.PriorityType.values()) {
+            sb.append(row(p.name(), p, seconds));
+        }
+        sb.append(row("all", null, seconds));
+        return sb.toString();
+    }
+
+    private String row(String label, OS.PriorityType p, double seconds) {
+        int arrived = 0;
+        List<Double> turn = new ArrayList<>();
+        List<Double> resp = new ArrayList<>();
+        List<Double> rate = new ArrayList<>();
+        for (Sample s : samples) {
+            if (p != null && s.priority != p) continue;
+            arrived++;
+            if (s.firstRunNanos >= 0) resp.add((s.firstRunNanos - s.arrivalNanos) / 1e6);
+            if (s.completionNanos >= 0) {
+                double t = (s.completionNanos - s.arrivalNanos) / 1e6;
+                turn.add(t);
+                rate.add(s.units / Math.max(t, 1e-6));
+            }
+        }
+        return String.format("%-12s %8d %8d %10.2f %12.2f %12.2f %12.2f %12.2f %9.3f%n",
+                label, arrived, turn.size(), turn.size() / seconds,
+                mean(turn), percentile(turn, 0.95), mean(resp), percentile(resp, 0.95), jain(rate));
+    }
+
+    private static double mean(List<Double> xs) {
+        if (xs.isEmpty()) return 0.0;
+        double sum = 0;
+        for (double x : xs) sum += x;
+        return sum / xs.size();
+    }
+
+    private static double percentile(List<Double> xs, double q) {
+        if (xs.isEmpty()) return 0.0;
+        double[] a = new double[xs.size()];
+        for (int i = 0; i < a.length; i++) a[i] = xs.get(i);
+        Arrays.sort(a);
+        return a[Math.min(a.length - 1, (int) Math.ceil(q * a.length) - 1)];
+    }
+
+    private static double jain(List<Double> xs) {
+        if (xs.isEmpty()) return 0.0;
+        double sum = 0, sq = 0;
+        for (double x : xs) { sum += x; sq += x * x; }
+        return (sq == 0) ? 1.0 : (sum * sum) / (xs.size() * sq);
+    }
+}